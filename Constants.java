@@ -22,42 +22,110 @@ public class Constants {
     private static final String mergeFileName = "m";
     /** The name of the temporary files used for the docIDs. */
     private  static final String idFileName = "id";
+    /** The name of the table of path offsets, one long per docID. */
+    private static final String docOffsetsFileName = "id_offsets";
+    /** The name of the file with the paths of all documents. */
+    private static final String docPathsFileName = "id_paths";
+    /** The name of the table of document lengths, one int per docID. */
+    private static final String docLengthsFileName = "doc_lengths";
+    /** The name of the impact ordered postings file. */
+    private static final String impactsFileName = "impacts";
+    /** The name of the index indexing the impact ordered postings. */
+    private static final String impactIndexFileName = "impacts_i";
+    /** The name of the list of indexed files and their modification times. */
+    private static final String manifestFileName = "manifest";
+    /** The name of the list of the first docID of every segment. */
+    private static final String segmentsFileName = "segments";
+    /** The name of the deleted documents of a segment. */
+    private static final String deletionsFileName = "deleted";
     /** The name of the main inverted index on file. */
     private static final String postingsFileName = "p";
     /** The name of the index indexing the inverted index. */
     private static final String indexFileName = "i";
     /** Standard extension of text files **/
     private static final String textFileExtension = "txt";
+    /** Standard extension of binary files **/
+    private static final String binaryFileExtension = "bin";
     /** Standard extension of document in the corpus **/
     public static final String standardCorpusFileExtension = ".f";
-    /** The maximum line size in the small index (Kb) **/
-    public static final int maxLineSize = 65 * 1024;
     /** The lates docID-path pair written to file **/
     public static int nextID = 0;
-    /** The cache size of the postings list cache **/
-    public static final int cacheMaxSize = 10000000;
-    /** The max size of the path cache **/
-    public static final int pathCacheMaxSize = 100000;
+    /** The number of bytes of postings lists read from disk to cache **/
+    public static long postingsCacheBytes = 256L << 20;
+    /** The number of query answers cached, 0 to cache none **/
+    public static int queryCacheSize = 1000;
+    /** The number of bytes of terms and postings to index in working memory before writing them to disk **/
+    public static long indexingMemoryBytes = Runtime.getRuntime().maxMemory() / 4;
+    /** The number of threads indexing files, 1 to index them one by one **/
+    public static int indexingThreads = Runtime.getRuntime().availableProcessors();
+    /** The most runs merged at once in the background while indexing on disk, 0 to merge them all at the end **/
+    public static int mergeThreads = 2;
     /** Keep in memory **/
     public static boolean keepInMemory = true;
+    /** Keep the in-memory index outside the Java heap **/
+    public static boolean offHeap = false;
+    /** Also write impact ordered postings, and use them for top-k ranked queries **/
+    public static boolean impactOrdered = false;
 
     public static final String postingsFileName() {
-        return writeDir + postingsFileName + "." + textFileExtension;
+        return writeDir + postingsFileName + "." + binaryFileExtension;
     }
 
     public static final String indexFileName() {
-        return writeDir + indexFileName + "." + textFileExtension;
+        return writeDir + indexFileName + "." + binaryFileExtension;
+    }
+
+    /** The postings file of a segment, where segment 0 is the main inverted index **/
+    public static final String postingsFileName(int segment) {
+        return segment == 0 ? postingsFileName() : writeDir + postingsFileName + "_" + segment + "." + binaryFileExtension;
+    }
+
+    /** The index of the postings file of a segment **/
+    public static final String indexFileName(int segment) {
+        return segment == 0 ? indexFileName() : writeDir + indexFileName + "_" + segment + "." + binaryFileExtension;
+    }
+
+    public static final String segmentsFileName() {
+        return writeDir + segmentsFileName + "." + textFileExtension;
+    }
+
+    public static final String deletionsFileName(int segment) {
+        return writeDir + deletionsFileName + "_" + segment + "." + binaryFileExtension;
+    }
+
+    public static final String manifestFileName() {
+        return writeDir + manifestFileName + "." + textFileExtension;
     }
 
     public static final String tempFileName(String fileID) {
-        return writeDir + tempFileName + "_" + fileID + "." + textFileExtension;
+        return writeDir + tempFileName + "_" + fileID + "." + binaryFileExtension;
     }
 
     public static final String mergeFileName(String fileID) {
-        return writeDir + mergeFileName + "_" + fileID + "." + textFileExtension;
+        return writeDir + mergeFileName + "_" + fileID + "." + binaryFileExtension;
     }
 
     public static final String idFileName() {
         return writeDir + idFileName + "." + textFileExtension;
     }
+
+    public static final String docOffsetsFileName() {
+        return writeDir + docOffsetsFileName + "." + binaryFileExtension;
+    }
+
+    public static final String docPathsFileName() {
+        return writeDir + docPathsFileName + "." + binaryFileExtension;
+    }
+
+    public static final String impactsFileName() {
+        return writeDir + impactsFileName + "." + binaryFileExtension;
+    }
+
+    public static final String impactIndexFileName() {
+        return writeDir + impactIndexFileName + "." + binaryFileExtension;
+    }
+
+    public static final String docLengthsFileName() {
+        return writeDir + docLengthsFileName + "." + binaryFileExtension;
+    }
 }
\ No newline at end of file
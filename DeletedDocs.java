@@ -0,0 +1,104 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ *   The deleted documents of an index, one bit per docID.
+ *
+ *   The postings of a deleted document stay in the index until a merge
+ *   leaves them out, and searches skip them by checking the bit of every
+ *   docID they would answer. On file every segment of the index has the
+ *   bits of its own docIDs: their number as an int, followed by the bits
+ *   from the first docID of the segment on as longs.
+ */
+public class DeletedDocs {
+
+    private long[] words = new long[16];
+
+    /** The number of deleted documents. */
+    private int size = 0;
+
+
+    /**  Returns true if the document is deleted */
+    public boolean contains(int docID) {
+        int word = docID >>> 6;
+        return word < words.length && (words[word] & (1L << docID)) != 0;
+    }
+
+    /**
+     *  Marks the document as deleted.
+     */
+    public void add(int docID) {
+        int word = docID >>> 6;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, Math.max(word + 1, 2 * words.length));
+        }
+        if ((words[word] & (1L << docID)) == 0) {
+            words[word] |= 1L << docID;
+            size++;
+        }
+    }
+
+    /**  Returns the number of deleted documents */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     *  Writes the bits of the docIDs from from to to, not including to.
+     */
+    public void write(String fileName, int from, int to) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+        out.writeInt(to - from);
+        for (int i = 0; i < to - from; i += 64) {
+            long bits = 0;
+            for (int j = 0; j < 64 && i + j < to - from; j++) {
+                if (contains(from + i + j)) {
+                    bits |= 1L << j;
+                }
+            }
+            out.writeLong(bits);
+        }
+        out.close();
+    }
+
+    /**
+     *  Adds the deleted documents in a file written by write(), for a
+     *  segment starting at docID from. A missing file deletes nothing.
+     */
+    public void read(String fileName, int from) throws IOException {
+        if (!new File(fileName).exists()) {
+            return;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+        int n = in.readInt();
+        for (int i = 0; i < n; i += 64) {
+            long bits = in.readLong();
+            for (int j = 0; j < 64 && bits != 0; j++) {
+                if ((bits & (1L << j)) != 0) {
+                    add(from + i + j);
+                }
+            }
+        }
+        in.close();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ *   The number of tokens of every document, indexed by docID.
+ *
+ *   While indexing the lengths are kept in an int array. On file they
+ *   are one int per docID, and a DocumentLengths read from file keeps
+ *   the file memory mapped.
+ */
+public class DocumentLengths {
+
+    private int[] lengths = new int[1024];
+    private int size = 0;
+
+    /** The lengths on file, or null if they are in the array. */
+    private MappedFile file = null;
+
+
+    /**
+     *  Sets the length of the document.
+     */
+    public void set(int docID, int length) {
+        if (docID >= lengths.length) {
+            lengths = Arrays.copyOf(lengths, Math.max(docID + 1, 2 * lengths.length));
+        }
+        lengths[docID] = length;
+        size = Math.max(size, docID + 1);
+    }
+
+    /**
+     *  Returns the length of the document, or 0 if it is not known.
+     */
+    public int get(int docID) {
+        if (docID < 0 || docID >= size) {
+            return 0;
+        }
+        return file != null ? file.getInt(4L * docID) : lengths[docID];
+    }
+
+    /**  Returns one more than the largest docID with a length */
+    public int size() {
+        return size;
+    }
+
+    /**
+     *  Writes the lengths to the file, one int per docID.
+     */
+    public void write(String fileName) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+        for (int docID = 0; docID < size; docID++) {
+            out.writeInt(get(docID));
+        }
+        out.close();
+    }
+
+    /**
+     *  Maps lengths written by write().
+     */
+    public static DocumentLengths open(String fileName) throws IOException {
+        DocumentLengths docLengths = new DocumentLengths();
+        docLengths.file = new MappedFile(fileName);
+        docLengths.size = (int)(docLengths.file.length() / 4);
+        docLengths.lengths = null;
+        return docLengths;
+    }
+}
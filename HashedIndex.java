@@ -10,86 +10,198 @@
 
 package ir;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
 
 
 
 /**
  *   Implements an inverted index as a Hashtable from words to PostingsLists.
+ *
+ *   The words are interned as term IDs in a TermTable and the postings
+ *   lists are kept in an array indexed by term ID.
  */
 public class HashedIndex implements Index {
 
-    /** The index as a hashtable. */
-    private HashMap<String,PostingsList> index = new HashMap<String,PostingsList>();
-    private HashMap<String,PostingsList> bigramIndex = new HashMap<String,PostingsList>();
+    /** The terms of the index. */
+    private TermTable terms = new TermTable();
+
+    /** The postings list of each term ID, or null if it is not in memory. */
+    private PostingsList[] postings = new PostingsList[1024];
+
+    /** The bytes used by the postings lists in postings. */
+    private long postingsBytes = 0;
+
+    /** The bigrams of the index, as "first,second". */
+    private TermTable bigramTerms = new TermTable();
+    private PostingsList[] bigramPostings = new PostingsList[1024];
+
+    /** Where a bigram, or a term of a block, is put together before it is interned. */
+    private char[] bigramBuffer = new char[64];
+
     private HashMap<String, String> docIDs = new HashMap<String,String>();
     private HashMap<String, Integer> articleTitles = new HashMap<String, Integer>();
     private HashMap<Integer, Double> pageRanks = new HashMap<Integer, Double>();
-    private Queue<String> cache = new LinkedList<String>();
-    private Queue<String> pathCache = new LinkedList<String>();
+    private PostingsCache postingsCache = new PostingsCache(Constants.postingsCacheBytes);
+    private QueryCache queryCache = new QueryCache(Constants.queryCacheSize);
+    private IndexReader reader = null;
+
+    /** The documents left out of every answer. */
+    private DeletedDocs deleted = new DeletedDocs();
+    private DocumentLengths docLengths = new DocumentLengths();
     private int numDocs = 0;
     private int numBigrams = 0;
     private final static int IDF_THRESHOLD = 1;
     private final static boolean ELIMINATE_INDEX = false;
 
+    /** The score accumulators of each searching thread. */
+    private static final ThreadLocal<ScoreAccumulator> accumulators = new ThreadLocal<ScoreAccumulator>() {
+        protected ScoreAccumulator initialValue() {
+            return new ScoreAccumulator();
+        }
+    };
+
 
     /**
      *  Inserts this token in the index.
      */
     public void insert( String token, int docID, int offset ) {
-        PostingsList pl = index.get(token);
-        if (pl == null) {
-            pl = new PostingsList();
-        }
-        PostingsEntry pe = new PostingsEntry(docID);
-        pl.insert(pe, offset);
-        index.put(token, pl);
+        insert(terms.intern(token), docID, offset);
+    }
+
+    /**
+     *  Inserts the term with this ID, as given by getTermTable(), in the
+     *  index. The offset is appended in place to the postings list of
+     *  the term, so nothing is allocated unless the list has to grow.
+     *  The query cache is not invalidated for every token; the indexer
+     *  does that once the document is indexed.
+     */
+    public void insert( int termID, int docID, int offset ) {
+        PostingsList pl = postingsOf(termID);
+        long before = pl == null ? 0 : pl.byteSize();
+        postings = accumulate(postings, termID, docID, offset);
+        postingsBytes += postings[termID].byteSize() - before;
+    }
+
+    public TermTable getTermTable() {
+        return terms;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    public PostingsCache getPostingsCache() {
+        return postingsCache;
+    }
+
+    /**
+     *  Returns the postings list in memory of the term ID, or null.
+     */
+    PostingsList postingsOf(int termID) {
+        return termID < postings.length ? postings[termID] : null;
     }
 
     public void insertBigram(String token, int docID, int offset) {
-        PostingsList pl = bigramIndex.get(token);
+        bigramPostings = accumulate(bigramPostings, bigramTerms.intern(token), docID, offset);
+    }
+
+    /**
+     *  Inserts the bigram of the two terms, given as term IDs. The first
+     *  term is -1 for the first token of a document, which gives the
+     *  bigram ",second".
+     */
+    public void insertBigram(int firstTermID, int termID, int docID, int offset) {
+        int length = (firstTermID >= 0 ? terms.length(firstTermID) : 0) + 1 + terms.length(termID);
+        if (length > bigramBuffer.length) {
+            bigramBuffer = new char[2 * length];
+        }
+        int pos = firstTermID >= 0 ? terms.getChars(firstTermID, bigramBuffer, 0) : 0;
+        bigramBuffer[pos++] = ',';
+        pos = terms.getChars(termID, bigramBuffer, pos);
+        bigramPostings = accumulate(bigramPostings, bigramTerms.intern(bigramBuffer, 0, pos), docID, offset);
+    }
+
+    /**
+     *  Appends the offset to the postings list of the term ID, creating
+     *  the list if needed, and returns the array, grown if needed.
+     */
+    private static PostingsList[] accumulate(PostingsList[] lists, int termID, int docID, int offset) {
+        if (termID >= lists.length) {
+            lists = Arrays.copyOf(lists, Math.max(2 * lists.length, termID + 1));
+        }
+        PostingsList pl = lists[termID];
         if (pl == null) {
             pl = new PostingsList();
+            lists[termID] = pl;
         }
-        PostingsEntry pe = new PostingsEntry(docID);
-        pl.insert(pe, offset);
-        bigramIndex.put(token, pl);
+        pl.insert(docID, offset);
+        return lists;
     }
 
     /**
      *  Returns all the words in the index.
      */
     public Iterator<String> getDictionary() {
-	   return index.keySet().iterator();
+        return dictionary(terms, postings);
+    }
+
+    /**
+     *  Returns an iterator over the terms of the table that have their
+     *  postings in memory.
+     */
+    private static Iterator<String> dictionary(final TermTable table, final PostingsList[] lists) {
+        return new Iterator<String>() {
+            private int next = nextTermInMemory(0);
+
+            public boolean hasNext() {
+                return next < table.size();
+            }
+
+            public String next() {
+                String term = table.term(next);
+                next = nextTermInMemory(next + 1);
+                return term;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private int nextTermInMemory(int id) {
+                while (id < table.size() && lists[id] == null) {
+                    id++;
+                }
+                return id;
+            }
+        };
     }
 
     /**
      *  Returns all the words in the bigram index.
      */
     public Iterator<String> getBigramDictionary() {
-	   return bigramIndex.keySet().iterator();
+        return dictionary(bigramTerms, bigramPostings);
     }
 
 
     /**
      *  Returns the postings for a specific term, or null
-     *  if the term is not in the index.
+     *  if the term is not in the index. Lists read from disk are kept in
+     *  the postings cache, apart from the lists being indexed.
      */
     public PostingsList getPostings( String token ) {
-        PostingsList pl = index.get(token);
-        if (pl == null && !Constants.keepInMemory) {
-            IndexReader ir = new IndexReader();
-            pl = ir.readPostingsListFromFile(token);
-            if (pl != null) {
-                if (index.size() >= Constants.cacheMaxSize) {
-                    index.remove(cache.poll());
+        int termID = terms.lookup(token);
+        PostingsList pl = termID >= 0 && termID < postings.length ? postings[termID] : null;
+        if (pl == null && reader != null) {
+            pl = postingsCache.get(token);
+            if (pl == null) {
+                pl = reader.readPostingsList(token);
+                if (pl != null) {
+                    pl.calculateScores(numDocs);
+                    postingsCache.put(token, pl);
                 }
-                index.put(token, pl);
-                cache.add(token);
             }
         }
         return pl;
@@ -97,12 +209,28 @@ public class HashedIndex implements Index {
 
 
     /**
-     *  Searches the index for postings matching the query.
+     *  Searches the index for postings matching the query. Answers are
+     *  looked up in, and added to, the query cache; an answer from the
+     *  cache has docIDs and scores but no offsets.
      */
     public PostingsList search( Query query, int queryType, int rankingType, int structureType ) {
+        String key = QueryCache.key(query, queryType, rankingType, structureType, 0);
+        PostingsList answer = queryCache.get(key);
+        if (answer == null) {
+            int generation = queryCache.generation();
+            answer = evaluate(query, queryType, rankingType, structureType);
+            if (answer != null) {
+                queryCache.put(key, answer, generation);
+            }
+        }
+        return answer;
+    }
+
+    private PostingsList evaluate( Query query, int queryType, int rankingType, int structureType ) {
         switch (queryType) {
             case INTERSECTION_QUERY:  return intersect(query);
             case PHRASE_QUERY:        return phrase(query);
+            case PROXIMITY_QUERY:     return proximity(query, query.window);
             case RANKED_QUERY:
                 if (structureType == UNIGRAM) {
                     return ranked(query, rankingType, true);
@@ -130,6 +258,39 @@ public class HashedIndex implements Index {
         }
     }
 
+    /**
+     *  Searches the index and returns the page of at most limit results
+     *  from result number offset on. The file paths of the results are
+     *  only looked up for the page, as they are asked for.
+     */
+    public ResultPage searchPage( Query query, int queryType, int rankingType, int structureType, int offset, int limit ) {
+        return new ResultPage(this, search(query, queryType, rankingType, structureType), offset, limit);
+    }
+
+    /**
+     *  Searches the index and returns at most the topK best postings.
+     *  Unigram tf-idf ranked queries are answered with dynamic pruning,
+     *  other queries are answered in full and cut.
+     */
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType, int topK ) {
+        if (queryType == RANKED_QUERY && rankingType == TF_IDF && structureType == UNIGRAM) {
+            String key = QueryCache.key(query, queryType, rankingType, structureType, topK);
+            PostingsList answer = queryCache.get(key);
+            if (answer == null) {
+                int generation = queryCache.generation();
+                if (Constants.impactOrdered && reader != null && reader.impacts() != null) {
+                    answer = rankedByImpact(query, topK, reader.impacts());
+                } else {
+                    answer = rankedTopK(query, topK);
+                }
+                queryCache.put(key, answer, generation);
+            }
+            return answer;
+        }
+        PostingsList answer = search(query, queryType, rankingType, structureType);
+        return answer == null ? null : answer.head(topK);
+    }
+
     /**
      *  Intersects the terms in a query
      */
@@ -137,20 +298,21 @@ public class HashedIndex implements Index {
         if (query.terms.size() > 0) {
             System.out.println("NOW DOING SEARCH...");
             long startTime = System.nanoTime();
-            String term = query.terms.getFirst();
-            PostingsList intersection = getPostings(term);
-
-            for (int i = 1; i < query.terms.size(); i++) {
-                String nextTerm = query.terms.get(i);
-                PostingsList pl = getPostings(nextTerm);
-                if (ELIMINATE_INDEX && eliminateIndex(pl)) {
+            PostingsList[] lists = new PostingsList[query.terms.size()];
+            int n = 0;
+            for (int i = 0; i < query.terms.size(); i++) {
+                PostingsList pl = getPostings(query.terms.get(i));
+                if (pl == null) {
+                    return null;
+                }
+                if (ELIMINATE_INDEX && i > 0 && eliminateIndex(pl)) {
                     continue;
                 }
-                intersection = intersect(intersection, pl);
-                if (intersection == null) {
-                    return null;
+                if (!contains(lists, n, pl)) {
+                    lists[n++] = pl;
                 }
             }
+            PostingsList intersection = n == 1 ? lists[0].without(deleted) : intersect(lists, n);
             long estimatedTime = System.nanoTime() - startTime;
             System.out.println("DONE WITH SEARCH after: " + estimatedTime/(double)1000000);
             return intersection;
@@ -159,6 +321,94 @@ public class HashedIndex implements Index {
         }
     }
 
+    /**
+     *  Returns true if the list is among the first n, as for a term that
+     *  is repeated in a query.
+     */
+    private static boolean contains(PostingsList[] lists, int n, PostingsList pl) {
+        for (int i = 0; i < n; i++) {
+            if (lists[i] == pl) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *  Intersects the first n postings lists in one pass.
+     */
+    public PostingsList intersect(PostingsList[] lists, int n) {
+        PostingsCursor[] cursors = new PostingsCursor[n];
+        for (int i = 0; i < n; i++) {
+            cursors[i] = lists[i].cursor();
+        }
+        cursors = byDocumentFrequency(cursors);
+        PostingsList answer = new PostingsList();
+        for (int docID = nextCommonDoc(cursors); docID != -1; docID = nextCommonDoc(cursors)) {
+            if (!deleted.contains(docID)) {
+                answer.insertScored(docID, 0);
+            }
+            for (int j = 0; j < n; j++) {
+                cursors[j].next();
+            }
+        }
+        return answer;
+    }
+
+    /**
+     *  Returns a copy of the cursors ordered by the size of their lists.
+     */
+    private static PostingsCursor[] byDocumentFrequency(PostingsCursor[] cursors) {
+        PostingsCursor[] sorted = new PostingsCursor[cursors.length];
+        for (int i = 0; i < cursors.length; i++) {
+            // Insertion sort, there are few cursors
+            int j = i;
+            while (j > 0 && sorted[j - 1].size() > cursors[i].size()) {
+                sorted[j] = sorted[j - 1];
+                j--;
+            }
+            sorted[j] = cursors[i];
+        }
+        return sorted;
+    }
+
+    /**
+     *  Moves the cursors to the next docID that all of them have and
+     *  returns it, or returns -1 if there is none.
+     *
+     *  The cursors must be ordered by document frequency. The rarest
+     *  proposes a candidate docID and every other cursor, from the rarest
+     *  up, gallops to it. A cursor that passes the candidate proposes a
+     *  new one and the rarest catches up. The work is bounded by the
+     *  length of the rarest list, and ends as soon as any list is
+     *  exhausted.
+     */
+    private static int nextCommonDoc(PostingsCursor[] cursors) {
+        PostingsCursor rarest = cursors[0];
+        while (rarest.valid()) {
+            int candidate = rarest.docID();
+            int i = 1;
+            while (i < cursors.length) {
+                PostingsCursor c = cursors[i];
+                if (c.valid() && c.docID() < candidate) {
+                    c.gallop(candidate);
+                }
+                if (!c.valid()) {
+                    return -1;
+                }
+                if (c.docID() > candidate) {
+                    break;
+                }
+                i++;
+            }
+            if (i == cursors.length) {
+                return candidate;
+            }
+            rarest.gallop(cursors[i].docID());
+        }
+        return -1;
+    }
+
     /**
      *  Intersects two postings lists.
      */
@@ -167,135 +417,251 @@ public class HashedIndex implements Index {
             return null;
         }
         PostingsList answer = new PostingsList();
-        int p1 = 0;
-        int p2 = 0;
-        while (p1 < l1.size() && p2 < l2.size()) {
-            if (l1.get(p1).docID == l2.get(p2).docID) {
-                PostingsEntry pe = new PostingsEntry(l1.get(p1).docID);
-                answer.insert(pe);
-                p1++; p2++;
-            } else if (l1.get(p1).docID < l2.get(p2).docID) {
-                p1++;
+        PostingsCursor c1 = l1.cursor();
+        PostingsCursor c2 = l2.cursor();
+        while (c1.valid() && c2.valid()) {
+            if (c1.docID() == c2.docID()) {
+                if (!deleted.contains(c1.docID())) {
+                    answer.insertScored(c1.docID(), 0);
+                }
+                c1.next(); c2.next();
+            } else if (c1.docID() < c2.docID()) {
+                c1.advance(c2.docID());
             } else {
-                p2++;
+                c2.advance(c1.docID());
             }
         }
         return answer;
     }
 
     /**
-     *  Performs a phrase query
+     *  Performs a phrase query. The answer has, for every document with
+     *  the phrase, the offsets of the last term of each occurrence.
      */
     public PostingsList phrase(Query query) {
-        if (query.terms.size() > 0) {
-            String term = query.terms.getFirst();
-            PostingsList phrase = getPostings(term);
+        return positional(query, 0);
+    }
 
-            for (int i = 1; i < query.terms.size(); i++) {
-                String nextTerm = query.terms.get(i);
-                phrase = phrase(phrase, getPostings(nextTerm));
-                if (phrase == null) {
-                    return null;
-                }
+    /**
+     *  Performs a proximity query: a document matches if it has all the
+     *  terms, in any order, within window consecutive tokens. The answer
+     *  has the offset where each such window ends.
+     */
+    public PostingsList proximity(Query query, int window) {
+        Query distinct = query.copy();
+        distinct.terms.clear();
+        for (String term : query.terms) {
+            if (!distinct.terms.contains(term)) {
+                distinct.terms.add(term);
             }
-            return phrase;
-        } else {
-            return null;
         }
+        return positional(distinct, window);
     }
 
     /**
-     *  Performs a phrase query between two postingslist
+     *  Evaluates a phrase query if window is 0 and a proximity query
+     *  otherwise, in one pass over the postings of all terms. The cursors
+     *  find the documents that have every term as in intersect(), and only
+     *  the offsets of those are matched, in arrays reused from document to
+     *  document. No intermediate lists are built.
      */
-    public PostingsList phrase(PostingsList l1, PostingsList l2) {
-        if (l1 == null || l2 == null) {
+    private PostingsList positional(Query query, int window) {
+        int n = query.terms.size();
+        if (n == 0) {
             return null;
         }
+        if (n == 1) {
+            PostingsList pl = getPostings(query.terms.getFirst());
+            return pl == null ? null : pl.without(deleted);
+        }
+        PostingsCursor[] cursors = new PostingsCursor[n];
+        for (int i = 0; i < n; i++) {
+            PostingsList pl = getPostings(query.terms.get(i));
+            if (pl == null) {
+                return null;
+            }
+            cursors[i] = pl.cursor();
+        }
+        PostingsCursor[] sorted = byDocumentFrequency(cursors);
+        int[][] offsets = new int[n][16];
+        int[] counts = new int[n];
+        int[] at = new int[n];
         PostingsList answer = new PostingsList();
-        int p1 = 0;
-        int p2 = 0;
-        while (p1 < l1.size() && p2 < l2.size()) {
-            if (l1.get(p1).docID == l2.get(p2).docID) {
-                ArrayList<Integer> matchingOffsets = succeedingIndices(l1.get(p1).getOffsets(), l2.get(p2).getOffsets());
-                if (matchingOffsets.size() > 0) {
-                    PostingsEntry pe = new PostingsEntry(l1.get(p1).docID);
-                    pe.setOffsets(matchingOffsets);
-                    answer.insert(pe);
+        for (int docID = nextCommonDoc(sorted); docID != -1; docID = nextCommonDoc(sorted)) {
+            if (!deleted.contains(docID)) {
+                if (window == 0) {
+                    phraseOffsets(docID, cursors, offsets, answer);
+                } else {
+                    boolean hasOffsets = true;
+                    for (int i = 0; i < n; i++) {
+                        counts[i] = decode(cursors[i].positions(), offsets, i);
+                        hasOffsets &= counts[i] > 0;
+                    }
+                    if (hasOffsets) {
+                        proximityOffsets(docID, offsets, counts, at, window, answer);
+                    }
                 }
-                p1++; p2++;
-            } else if (l1.get(p1).docID < l2.get(p2).docID) {
-                p1++;
-            } else {
-                p2++;
+            }
+            for (int i = 0; i < n; i++) {
+                cursors[i].next();
             }
         }
         return answer;
     }
 
     /**
-     *  Returns true if the two lists have succeeding indices
+     *  Decodes the offsets into offsets[i], growing it if needed, and
+     *  returns their number.
      */
-    public ArrayList<Integer> succeedingIndices(ArrayList<Integer> i1, ArrayList<Integer> i2) {
-        ArrayList<Integer> offsets = new ArrayList<Integer>();
-        int pp1 = 0;
-        int pp2 = 0;
-        while (pp1 < i1.size() && pp2 < i2.size()) {
-            if (i2.get(pp2) - i1.get(pp1) == 1) {
-                offsets.add(i2.get(pp2));
-                pp1++; pp2++;
-            } else if (i2.get(pp2) - i1.get(pp1) > 1) {
-                pp1++;
+    private static int decode(PositionIterator positions, int[][] offsets, int i) {
+        int[] dst = offsets[i];
+        int count = 0;
+        while (positions.hasNext()) {
+            if (count == dst.length) {
+                dst = offsets[i] = Arrays.copyOf(dst, 2 * count);
+            }
+            dst[count++] = positions.next();
+        }
+        return count;
+    }
+
+    /**
+     *  Adds the end offset of every occurrence of the phrase in the
+     *  document the cursors point at to the answer. The offsets where the
+     *  first two terms occur next to each other are merged out as the
+     *  starts of possible occurrences, into starts[0], and every further
+     *  term keeps the starts it follows at the right distance. The offsets
+     *  of a term are decoded only as far as there are starts left.
+     */
+    private static void phraseOffsets(int docID, PostingsCursor[] cursors, int[][] starts, PostingsList answer) {
+        int n = cursors.length;
+        int[] s = starts[0];
+        int count = 0;
+        PositionIterator first = cursors[0].positions();
+        PositionIterator second = cursors[1].positions();
+        if (!first.hasNext() || !second.hasNext()) {
+            return;
+        }
+        int o1 = first.next();
+        int o2 = second.next();
+        while (true) {
+            if (o2 - o1 == 1) {
+                if (count == s.length) {
+                    s = starts[0] = Arrays.copyOf(s, 2 * count);
+                }
+                s[count++] = o1;
+                if (!first.hasNext() || !second.hasNext()) {
+                    break;
+                }
+                o1 = first.next();
+                o2 = second.next();
+            } else if (o2 - o1 > 1) {
+                if (!first.hasNext()) {
+                    break;
+                }
+                o1 = first.next();
             } else {
-                pp2++;
+                if (!second.hasNext()) {
+                    break;
+                }
+                o2 = second.next();
+            }
+        }
+        for (int k = 2; k < n && count > 0; k++) {
+            PositionIterator positions = cursors[k].positions();
+            int kept = 0;
+            int i = 0;
+            int o = positions.hasNext() ? positions.next() : -1;
+            while (o != -1 && i < count) {
+                int wanted = s[i] + k;
+                if (o == wanted) {
+                    s[kept++] = s[i++];
+                    o = positions.hasNext() ? positions.next() : -1;
+                } else if (o > wanted) {
+                    i++;
+                } else {
+                    o = positions.hasNext() ? positions.next() : -1;
+                }
+            }
+            count = kept;
+        }
+        for (int i = 0; i < count; i++) {
+            answer.insert(docID, s[i] + n - 1);
+        }
+    }
+
+    /**
+     *  Adds to the answer the end offset of every window of the given
+     *  number of tokens that holds all terms. The offsets of the terms
+     *  are walked together, always moving the term furthest behind.
+     *  at[i] is the index of the current offset of term i.
+     */
+    private static void proximityOffsets(int docID, int[][] offsets, int[] counts, int[] at, int window, PostingsList answer) {
+        int n = offsets.length;
+        Arrays.fill(at, 0);
+        int lastEnd = -1;
+        while (true) {
+            int first = 0;
+            int end = offsets[0][at[0]];
+            for (int i = 1; i < n; i++) {
+                int offset = offsets[i][at[i]];
+                if (offset < offsets[first][at[first]]) {
+                    first = i;
+                }
+                end = Math.max(end, offset);
+            }
+            if (end - offsets[first][at[first]] < window && end != lastEnd) {
+                answer.insert(docID, end);
+                lastEnd = end;
+            }
+            if (++at[first] == counts[first]) {
+                return;
             }
         }
-        return offsets;
     }
 
     public PostingsList ranked(Query query, int rankingType, boolean unigram) {
         System.out.println("Searching...");
         long startTime = System.nanoTime();
-        HashMap<Integer, PostingsEntry> docs = new HashMap<Integer, PostingsEntry>();
+        ScoreAccumulator docs = accumulators.get();
+        docs.reset(numDocs);
         for (int i = 0; i < query.terms.size(); i++) {
             PostingsList pl;
             if (unigram) {
                 pl = getPostings(query.terms.get(i));
             } else {
-                pl = bigramIndex.get(query.terms.get(i));
+                int bigramID = bigramTerms.lookup(query.terms.get(i));
+                pl = bigramID >= 0 ? bigramPostings[bigramID] : null;
             }
             if (ELIMINATE_INDEX && eliminateIndex(pl)) {
                 continue;
             }
             if (pl != null) {
+                double weight = query.weights.get(query.terms.get(i));
                 for (int j = 0; j < pl.size(); j++) {
-                    PostingsEntry pe = pl.get(j);
-                    PostingsEntry res = docs.get(pl.get(j).docID);
-                    if (res == null) {
-                        res = new PostingsEntry(pe.docID);
+                    if (!deleted.contains(pl.docID(j))) {
+                        docs.add(pl.docID(j), pl.score(j)*weight);
                     }
-                    res.score += pe.score*query.weights.get(query.terms.get(i));
-                    docs.put(res.docID, res);
                 }
             }
         }
 
-        LinkedList<PostingsEntry> postingsList = new LinkedList<PostingsEntry>(docs.values());
         PostingsList answer = new PostingsList();
-        answer.setPostingsList(postingsList);
+        for (int i = 0; i < docs.size(); i++) {
+            answer.insertScored(docs.docID(i), docs.score(docs.docID(i)));
+        }
 
         answer = lengthNormalize(answer, query.terms.size());
 
         if (rankingType == Index.PAGERANK) {
             for (int i = 0; i < answer.size(); i++) {
-                PostingsEntry pe = answer.get(i);
-                pe.score = pageRank(pe.docID);
+                answer.setScore(i, pageRank(answer.docID(i)));
             }
         }
 
         if (rankingType == Index.COMBINATION) {
             for (int i = 0; i < answer.size(); i++) {
-                PostingsEntry pe = answer.get(i);
-                pe.score = pageRankFunction(pe.score, pe.docID);
+                answer.setScore(i, pageRankFunction(answer.score(i), answer.docID(i)));
             }
         }
 
@@ -306,11 +672,263 @@ public class HashedIndex implements Index {
         return answer;
     }
 
+    /**
+     *  Returns the k best documents for the query, scored as by ranked()
+     *  with tf-idf, using MaxScore.
+     *
+     *  Each query term has an upper bound of what it can add to the
+     *  length normalized score of a document. The postings are walked
+     *  document at a time. The terms with the smallest bounds, which
+     *  together cannot lift a document above the k:th best score so far,
+     *  are non-essential: a document is only a candidate if it is in the
+     *  postings of an essential term, and the non-essential postings are
+     *  only advanced to a candidate while its score can still beat the
+     *  k:th best. Documents that are scored in full get the same score
+     *  as in ranked().
+     */
+    public PostingsList rankedTopK(Query query, int k) {
+        System.out.println("Searching...");
+        long startTime = System.nanoTime();
+        int queryLength = query.terms.size();
+        PostingsCursor[] cursors = new PostingsCursor[queryLength];
+        double[] weights = new double[queryLength];
+        double[] bounds = new double[queryLength];
+        int m = 0;
+        for (int i = 0; i < queryLength; i++) {
+            PostingsList pl = getPostings(query.terms.get(i));
+            if (pl != null && pl.size() > 0) {
+                cursors[m] = pl.cursor();
+                weights[m] = query.weights.get(query.terms.get(i));
+                bounds[m] = weights[m] * scoreBound(pl) / queryLength;
+                m++;
+            }
+        }
+
+        // The terms by ascending bound, and the sum of the bounds up to each
+        int[] order = new int[m];
+        for (int i = 0; i < m; i++) {
+            int j = i;
+            while (j > 0 && bounds[order[j - 1]] > bounds[i]) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        double[] cumulative = new double[m];
+        for (int j = 0; j < m; j++) {
+            cumulative[j] = bounds[order[j]] + (j > 0 ? cumulative[j - 1] : 0);
+        }
+
+        ScoreHeap heap = new ScoreHeap(k);
+        int firstEssential = 0;
+        while (k > 0) {
+            // A document that cannot score above the threshold is out
+            double threshold = heap.full() ? heap.minScore() : -1;
+            while (firstEssential < m && cumulative[firstEssential] <= threshold) {
+                firstEssential++;
+            }
+            if (firstEssential == m) {
+                break;
+            }
+            int docID = Integer.MAX_VALUE;
+            for (int j = firstEssential; j < m; j++) {
+                PostingsCursor c = cursors[order[j]];
+                if (c.valid() && c.docID() < docID) {
+                    docID = c.docID();
+                }
+            }
+            if (docID == Integer.MAX_VALUE) {
+                break;
+            }
+            if (deleted.contains(docID)) {
+                for (int j = firstEssential; j < m; j++) {
+                    PostingsCursor c = cursors[order[j]];
+                    if (c.valid() && c.docID() == docID) {
+                        c.next();
+                    }
+                }
+                continue;
+            }
+
+            double norm = (double)(docLengths.get(docID) * queryLength);
+            double score = 0;
+            for (int j = firstEssential; j < m; j++) {
+                PostingsCursor c = cursors[order[j]];
+                if (c.valid() && c.docID() == docID) {
+                    score += c.score() * weights[order[j]] / norm;
+                }
+            }
+            boolean candidate = true;
+            for (int j = firstEssential - 1; j >= 0; j--) {
+                if (score + cumulative[j] <= threshold) {
+                    candidate = false;
+                    break;
+                }
+                PostingsCursor c = cursors[order[j]];
+                c.advance(docID);
+                if (c.valid() && c.docID() == docID) {
+                    score += c.score() * weights[order[j]] / norm;
+                }
+            }
+            if (candidate) {
+                // Sum in query order, as ranked() does
+                double sum = 0;
+                for (int i = 0; i < m; i++) {
+                    if (cursors[i].valid() && cursors[i].docID() == docID) {
+                        sum += cursors[i].score() * weights[i];
+                    }
+                }
+                heap.offer(docID, sum / norm);
+            }
+            for (int j = firstEssential; j < m; j++) {
+                PostingsCursor c = cursors[order[j]];
+                if (c.valid() && c.docID() == docID) {
+                    c.next();
+                }
+            }
+        }
+
+        PostingsList answer = heap.toPostingsList();
+        long estimatedTime = System.nanoTime() - startTime;
+        System.out.println("Done with search after: " + estimatedTime/(double)1000000 + " ms.");
+        return answer;
+    }
+
+    /**
+     *  Returns the k best documents for the query, score-at-a-time over
+     *  impact ordered postings.
+     *
+     *  The impact segments of all query terms are processed in order of
+     *  descending weighted impact, adding to score accumulators. What the
+     *  unprocessed segments can still add to a document is at most the
+     *  sum of the next weighted impact of every term. Evaluation stops as
+     *  soon as that cannot bring a document outside the k best, seen or
+     *  not, up to the k:th best score. The scores, and so the order within
+     *  the k best, are those accumulated when evaluation stops, in the
+     *  same units as ranked() but quantized.
+     */
+    public PostingsList rankedByImpact(Query query, int k, ImpactIndex impacts) {
+        System.out.println("Searching...");
+        long startTime = System.nanoTime();
+        int queryLength = query.terms.size();
+        ImpactIndex.Postings[] lists = new ImpactIndex.Postings[queryLength];
+        double[] weights = new double[queryLength];
+        int[] segment = new int[queryLength];
+        int m = 0;
+        for (int i = 0; i < queryLength; i++) {
+            ImpactIndex.Postings postings = impacts.read(query.terms.get(i));
+            if (postings != null) {
+                lists[m] = postings;
+                weights[m] = query.weights.get(query.terms.get(i));
+                m++;
+            }
+        }
+
+        ScoreAccumulator docs = accumulators.get();
+        docs.reset(numDocs);
+        int processed = 0;
+        int nextCheck = 0;
+        while (k > 0) {
+            // The segment with the largest weighted impact goes next
+            int next = -1;
+            for (int i = 0; i < m; i++) {
+                if (segment[i] < lists[i].numSegments
+                    && (next == -1 || weights[i] * impacts.score(lists[i].impacts[segment[i]]) > weights[next] * impacts.score(lists[next].impacts[segment[next]]))) {
+                    next = i;
+                }
+            }
+            if (next == -1) {
+                break;
+            }
+            ImpactIndex.Postings postings = lists[next];
+            int j = segment[next]++;
+            double impact = weights[next] * impacts.score(postings.impacts[j]);
+            for (int p = postings.segmentStart[j]; p < postings.segmentStart[j + 1]; p++) {
+                if (!deleted.contains(postings.docIDs[p])) {
+                    docs.add(postings.docIDs[p], impact);
+                }
+            }
+            processed += postings.segmentStart[j + 1] - postings.segmentStart[j];
+
+            double remaining = 0;
+            for (int i = 0; i < m; i++) {
+                if (segment[i] < lists[i].numSegments) {
+                    remaining += weights[i] * impacts.score(lists[i].impacts[segment[i]]);
+                }
+            }
+            if (remaining == 0) {
+                break;
+            }
+            // The check scans all accumulators, so it is made each time
+            // the number of postings processed has grown by a quarter
+            if (processed >= nextCheck && docs.size() >= k) {
+                if (topKDecided(docs, k, remaining)) {
+                    break;
+                }
+                nextCheck = processed + processed / 4;
+            }
+        }
+
+        ScoreHeap heap = new ScoreHeap(k);
+        for (int i = 0; i < docs.size(); i++) {
+            int docID = docs.docID(i);
+            heap.offer(docID, docs.score(docID));
+        }
+        PostingsList answer = heap.toPostingsList();
+        for (int i = 0; i < answer.size(); i++) {
+            answer.setScore(i, answer.score(i) / queryLength);
+        }
+        long estimatedTime = System.nanoTime() - startTime;
+        System.out.println("Done with search after: " + estimatedTime/(double)1000000 + " ms, " + processed + " postings.");
+        return answer;
+    }
+
+    /**
+     *  Returns true if no document outside the k best accumulated so far
+     *  can reach the k:th best score by adding remaining to it.
+     */
+    private boolean topKDecided(ScoreAccumulator docs, int k, double remaining) {
+        ScoreHeap heap = new ScoreHeap(k);
+        for (int i = 0; i < docs.size(); i++) {
+            int docID = docs.docID(i);
+            heap.offer(docID, docs.score(docID));
+        }
+        double kth = heap.minScore();
+        if (remaining >= kth) {
+            return false;
+        }
+        int reach = 0;
+        for (int i = 0; i < docs.size(); i++) {
+            if (docs.score(docs.docID(i)) + remaining >= kth && ++reach > k) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *  Returns an upper bound of score/docLength over the postings. It is
+     *  a little larger than the largest one, so that rounding cannot make
+     *  the bound of a document smaller than its score.
+     */
+    private double scoreBound(PostingsList pl) {
+        double bound = pl.scoreBound();
+        if (Double.isNaN(bound)) {
+            bound = 0;
+            for (int i = 0; i < pl.size(); i++) {
+                bound = Math.max(bound, pl.score(i) / docLengths.get(pl.docID(i)));
+            }
+            bound *= 1 + 1e-9;
+            pl.setScoreBound(bound);
+        }
+        return bound;
+    }
+
     private PostingsList lengthNormalize(PostingsList answer, int queryLength) {
         for (int i = 0; i < answer.size(); i++) {
-            PostingsEntry pe = answer.get(i);
-            //pe.score = pe.score/((Math.log(docLengths.get("" + pe.docID)) + 1) * queryLength);
-            pe.score = pe.score/(docLengths.get("" + pe.docID) * queryLength);
+            int docID = answer.docID(i);
+            //answer.setScore(i, answer.score(i)/((Math.log(docLengths.get(docID)) + 1) * queryLength));
+            answer.setScore(i, answer.score(i)/(docLengths.get(docID) * queryLength));
         }
         return answer;
     }
@@ -347,7 +965,16 @@ public class HashedIndex implements Index {
      *  Returns the number postings list in the index
      */
     public int size() {
-        return index.size();
+        return terms.size();
+    }
+
+    /**
+     *  Returns about the number of bytes of heap memory used by the terms
+     *  and postings lists, which are what transferIndexToDisk moves out
+     *  of working memory. The sampled bigrams are not counted.
+     */
+    public long byteSize() {
+        return terms.byteSize() + 8L * postings.length + postingsBytes;
     }
 
     /**
@@ -355,30 +982,94 @@ public class HashedIndex implements Index {
      */
     public void transferIndexToDisk(int blockID) {
         IndexWriter iw = new IndexWriter();
-        iw.writeIndexToDisk(index, Integer.toString(blockID), docIDs);
+        iw.writeIndexToDisk(terms, postings, Integer.toString(blockID), docIDs);
         cleanup();
     }
 
+    /**
+     *  Writes the postings lists in working memory to the temporary file
+     *  with the given name and clears them, keeping the docIDs.
+     */
+    void writeRun(String fileName) {
+        new IndexWriter().writeRun(terms, postings, fileName);
+        clearPostings();
+    }
+
+    /**
+     *  Adds the postings lists of the block, whose documents all come
+     *  after those of this index, to this index. The lists of the block
+     *  are taken over, so the block must not be used afterwards.
+     */
+    public void addBlock(HashedIndex block) {
+        postings = merge(terms, postings, block.terms, block.postings);
+        postingsBytes = 0;
+        for (int id = 0; id < terms.size(); id++) {
+            if (postings[id] != null) {
+                postingsBytes += postings[id].byteSize();
+            }
+        }
+        addBigrams(block);
+    }
+
+    /**
+     *  Adds the bigram postings lists of the block to this index.
+     */
+    void addBigrams(HashedIndex block) {
+        bigramPostings = merge(bigramTerms, bigramPostings, block.bigramTerms, block.bigramPostings);
+        queryCache.invalidate();
+    }
+
+    /**
+     *  Appends every list of the block to the list of the same term in
+     *  lists, interning the term in table, and returns lists, grown if
+     *  needed.
+     */
+    private PostingsList[] merge(TermTable table, PostingsList[] lists, TermTable blockTable, PostingsList[] blockLists) {
+        for (int id = 0; id < blockTable.size(); id++) {
+            PostingsList pl = blockLists[id];
+            if (pl == null) {
+                continue;
+            }
+            int length = blockTable.length(id);
+            if (length > bigramBuffer.length) {
+                bigramBuffer = new char[2 * length];
+            }
+            blockTable.getChars(id, bigramBuffer, 0);
+            int termID = table.intern(bigramBuffer, 0, length);
+            if (termID >= lists.length) {
+                lists = Arrays.copyOf(lists, Math.max(2 * lists.length, termID + 1));
+            }
+            if (lists[termID] == null) {
+                lists[termID] = pl;
+            } else {
+                lists[termID].append(pl);
+            }
+        }
+        return lists;
+    }
+
     /**
      *  Clears the index
      */
     public void cleanup() {
-        index.clear();
+        clearPostings();
         docIDs.clear();
     }
 
+    /**
+     *  Clears the terms and postings lists, but not the docIDs.
+     */
+    void clearPostings() {
+        queryCache.invalidate();
+        terms.clear();
+        Arrays.fill(postings, null);
+        postingsBytes = 0;
+    }
+
     public String getFilePath(String id) {
         String path = docIDs.get(id);
-        if (path == null) {
-            IndexReader ir = new IndexReader();
-            path = ir.readFilePath(id);
-            if (path != null) {
-                if (docIDs.size() >= Constants.pathCacheMaxSize) {
-                    docIDs.remove(pathCache.poll());
-                }
-                docIDs.put(id, path);
-                pathCache.add(id);
-            }
+        if (path == null && reader != null) {
+            path = reader.readFilePath(id);
         }
         return path;
     }
@@ -387,23 +1078,52 @@ public class HashedIndex implements Index {
         docIDs.put(key, value);
     }
 
-    public void setFilePaths(HashMap<String, String> map) {
-        for (String key : map.keySet()) {
-            pathCache.add(key);
-        }
-        docIDs = map;
-    }
-
     public void setArticleTitles(HashMap<String, Integer> map) {
         articleTitles = map;
+        queryCache.invalidate();
     }
 
     public void setPageRanks(HashMap<Integer, Double> map) {
         pageRanks = map;
+        queryCache.invalidate();
+    }
+
+    /**
+     *  Makes the index read postings lists that are not in memory, and
+     *  the document lengths, from the reader.
+     */
+    public void setIndexReader(IndexReader reader) {
+        this.reader = reader;
+        docLengths = reader.documentLengths();
+        deleted = reader.deletedDocs();
+        postingsCache.clear();
+        queryCache.invalidate();
+    }
+
+    public DocumentLengths getDocumentLengths() {
+        return docLengths;
+    }
+
+    /**
+     *  Deletes the document. Its postings stay in the index, but it is
+     *  left out of every answer from now on.
+     */
+    public void delete(int docID) {
+        deleted.add(docID);
+        queryCache.invalidate();
+    }
+
+    public DeletedDocs getDeletedDocs() {
+        return deleted;
     }
 
     public void setNumDocs(int n) {
+        if (n != numDocs) {
+            // The scores of the cached lists depend on numDocs
+            postingsCache.clear();
+        }
         numDocs = n;
+        queryCache.invalidate();
     }
 
     private double tfIdf(int tf, int numDocs, int df) {
@@ -416,28 +1136,18 @@ public class HashedIndex implements Index {
     }
 
     public void calculateScores() {
-        Iterator it = getDictionary();
-        while (it.hasNext()) {
-            String term = (String)it.next();
-            PostingsList pl = index.get(term);
-            int documentFreq = pl.size();
-            for (int i = 0; i < pl.size(); i++) {
-                PostingsEntry pe = pl.get(i);
-                pe.calculateScore(numDocs, documentFreq);
+        queryCache.invalidate();
+        for (int id = 0; id < terms.size(); id++) {
+            if (postings[id] != null) {
+                postings[id].calculateScores(numDocs);
             }
         }
     }
 
     public void calculateBigramScores() {
-        Iterator it = getBigramDictionary();
-        while (it.hasNext()) {
-            String term = (String)it.next();
-            PostingsList pl = bigramIndex.get(term);
-            int documentFreq = pl.size();
-            for (int i = 0; i < pl.size(); i++) {
-                PostingsEntry pe = pl.get(i);
-                pe.calculateScore(numBigrams, documentFreq);
-            }
+        queryCache.invalidate();
+        for (int id = 0; id < bigramTerms.size(); id++) {
+            bigramPostings[id].calculateScores(numBigrams);
         }
     }
 
@@ -458,12 +1168,10 @@ public class HashedIndex implements Index {
         HashMap<Integer, Double> answerMap1 = new HashMap<Integer, Double>();
         HashMap<Integer, Double> answerMap2 = new HashMap<Integer, Double>();
         for (int i = 0; i < answer1.size(); i++) {
-            PostingsEntry pe = answer1.get(i);
-            answerMap1.put(pe.docID, pe.score);
+            answerMap1.put(answer1.docID(i), answer1.score(i));
         }
         for (int i = 0; i < answer2.size(); i++) {
-            PostingsEntry pe = answer2.get(i);
-            answerMap2.put(pe.docID, pe.score);
+            answerMap2.put(answer2.docID(i), answer2.score(i));
         }
         HashMap<Integer, Double> answer = new HashMap<Integer, Double>();
         for (Integer key : answerMap1.keySet()) {
@@ -480,9 +1188,7 @@ public class HashedIndex implements Index {
         }
         PostingsList pl = new PostingsList();
         for (Integer key : answer.keySet()) {
-            PostingsEntry pe = new PostingsEntry(key);
-            pe.score = answer.get(key);
-            pl.insert(pe);
+            pl.insertScored(key, answer.get(key));
         }
         pl.sort();
 
@@ -497,5 +1203,6 @@ public class HashedIndex implements Index {
 
     public void setNumBigramDocs(int bigramCount) {
         numBigrams = bigramCount;
+        queryCache.invalidate();
     }
 }
@@ -0,0 +1,303 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *   An impact ordered copy of the postings file, for ranked queries.
+ *
+ *   The impact of a posting is its tf-idf score divided by the length of
+ *   the document, the part of a ranked score that does not depend on the
+ *   query, quantized to an integer from 1 to MAX_IMPACT. The quantization
+ *   is logarithmic between the smallest and the largest score above 0, so
+ *   that the few high scores that decide the best documents get impacts
+ *   of their own. score(impact) gives back the largest score of an
+ *   impact. The postings of a term are grouped into segments of equal
+ *   impact, in descending impact order, with ascending docIDs within a
+ *   segment. Postings with a score of 0 are left out.
+ *
+ *   The impacts file starts with MAGIC, VERSION, the number of documents
+ *   and the length of the postings file it was written from, the
+ *   logarithm of the smallest score and the logarithmic width of an
+ *   impact as doubles, followed by one record per term: an int length and then, as variable
+ *   byte codes, the term length, the term in UTF-8, the number of
+ *   segments and for each segment its impact, its number of postings and
+ *   the docID gaps. A TermDictionary in a file of its own holds the
+ *   offset of every record.
+ */
+public class ImpactIndex {
+
+    /** Identifies an impacts file ("IRIM"). */
+    public static final int MAGIC = 0x4952494D;
+
+    /** The version of the file layout. */
+    public static final int VERSION = 2;
+
+    /** The largest quantized impact. */
+    public static final int MAX_IMPACT = 255;
+
+    private static final int HEADER_LENGTH = 36;
+
+    private MappedFile impacts;
+    private TermDictionary dictionary;
+
+    /** The largest score of each impact. */
+    private final double[] scores = new double[MAX_IMPACT + 1];
+
+
+    /**
+     *  The impact segments of one term.
+     */
+    public static class Postings {
+        /** The number of segments. */
+        public final int numSegments;
+        /** The impact of each segment, descending. */
+        public final int[] impacts;
+        /** Segment j holds docIDs[segmentStart[j]] to docIDs[segmentStart[j+1]]. */
+        public final int[] segmentStart;
+        public final int[] docIDs;
+
+        Postings(int numSegments, int[] impacts, int[] segmentStart, int[] docIDs) {
+            this.numSegments = numSegments;
+            this.impacts = impacts;
+            this.segmentStart = segmentStart;
+            this.docIDs = docIDs;
+        }
+    }
+
+    /**
+     *  Returns true if there is an impacts file to open.
+     */
+    public static boolean exists() {
+        return new File(Constants.impactsFileName()).exists() && new File(Constants.impactIndexFileName()).exists();
+    }
+
+    /**
+     *  Deletes the impacts file and its dictionary.
+     */
+    public static void delete() {
+        new File(Constants.impactsFileName()).delete();
+        new File(Constants.impactIndexFileName()).delete();
+    }
+
+    /**
+     *  Maps the impacts file and loads its dictionary. Returns null if
+     *  the file was not written from the index of numDocs documents and
+     *  a postings file of postingsLength bytes, the index as it is now.
+     */
+    public static ImpactIndex open(int numDocs, long postingsLength) throws IOException {
+        ImpactIndex index = new ImpactIndex();
+        index.impacts = new MappedFile(Constants.impactsFileName());
+        if (index.impacts.getInt(0) != MAGIC) {
+            throw new IOException("Not an impacts file");
+        }
+        int version = index.impacts.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported impacts file version " + version);
+        }
+        if (index.impacts.getInt(8) != numDocs || index.impacts.getLong(12) != postingsLength) {
+            return null;
+        }
+        double logMin = Double.longBitsToDouble(index.impacts.getLong(20));
+        double width = Double.longBitsToDouble(index.impacts.getLong(28));
+        for (int impact = 1; impact <= MAX_IMPACT; impact++) {
+            index.scores[impact] = Math.exp(logMin + impact * width);
+        }
+        MappedFile dictionaryFile = new MappedFile(Constants.impactIndexFileName());
+        index.dictionary = TermDictionary.read(dictionaryFile.slice(0, (int)dictionaryFile.length()));
+        return index;
+    }
+
+    /**
+     *  Returns the largest score, divided by document length, that is
+     *  quantized to the impact.
+     */
+    public double score(int impact) {
+        return scores[impact];
+    }
+
+    /**
+     *  Reads the impact segments of the term, or returns null if the
+     *  term has no postings with an impact.
+     */
+    public Postings read(String term) {
+        int termNumber = dictionary.lookup(term);
+        if (termNumber == -1) {
+            return null;
+        }
+        long offset = dictionary.offset(termNumber);
+        ByteBuffer buf = impacts.slice(offset + 4, impacts.getInt(offset));
+        int termLength = VariableByteCode.decode(buf);
+        buf.position(buf.position() + termLength);
+        int numSegments = VariableByteCode.decode(buf);
+        int[] segmentImpacts = new int[numSegments];
+        int[] segmentStart = new int[numSegments + 1];
+        int[] docIDs = new int[dictionary.df(termNumber)];
+        int n = 0;
+        for (int j = 0; j < numSegments; j++) {
+            segmentImpacts[j] = VariableByteCode.decode(buf);
+            int count = VariableByteCode.decode(buf);
+            segmentStart[j] = n;
+            int docID = 0;
+            for (int i = 0; i < count; i++) {
+                docID += VariableByteCode.decode(buf);
+                docIDs[n++] = docID;
+            }
+        }
+        segmentStart[numSegments] = n;
+        return new Postings(numSegments, segmentImpacts, segmentStart, docIDs);
+    }
+
+    /**
+     *  Writes the impacts file and its dictionary from the postings file.
+     *  The postings file is read twice, first to find the range of scores
+     *  to quantize and then to write the segments. Both files are written
+     *  under other names and renamed once complete; if writing fails,
+     *  there are no impacts afterwards.
+     */
+    public static void write(DocumentLengths docLengths, int numDocs) throws IOException {
+        delete();
+        String impactsFileName = Constants.mergeFileName("impacts");
+        String impactIndexFileName = Constants.mergeFileName("impacts_i");
+        try {
+            double minScore = Double.MAX_VALUE;
+            double maxScore = 0;
+            DataInputStream in = openPostings();
+            byte[] record = PostingsFormat.readRecord(in);
+            while (record != null) {
+                PostingsList pl = PostingsFormat.decode(ByteBuffer.wrap(record));
+                pl.calculateScores(numDocs);
+                for (int i = 0; i < pl.size(); i++) {
+                    double score = pl.score(i) / docLengths.get(pl.docID(i));
+                    if (score > 0) {
+                        minScore = Math.min(minScore, score);
+                        maxScore = Math.max(maxScore, score);
+                    }
+                }
+                record = PostingsFormat.readRecord(in);
+            }
+            in.close();
+            double logMin = maxScore > 0 ? Math.log(minScore) : 0;
+            double width = maxScore > minScore ? (Math.log(maxScore) - logMin) / MAX_IMPACT : 1;
+
+            in = openPostings();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(impactsFileName)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(numDocs);
+            out.writeLong(new File(Constants.postingsFileName()).length());
+            out.writeLong(Double.doubleToLongBits(logMin));
+            out.writeLong(Double.doubleToLongBits(width));
+            TermDictionary dictionary = new TermDictionary();
+            long offset = HEADER_LENGTH;
+            record = PostingsFormat.readRecord(in);
+            while (record != null) {
+                String term = PostingsFormat.term(record);
+                PostingsList pl = PostingsFormat.decode(ByteBuffer.wrap(record));
+                pl.calculateScores(numDocs);
+                int[] quantized = new int[pl.size()];
+                int df = 0;
+                for (int i = 0; i < pl.size(); i++) {
+                    double score = pl.score(i) / docLengths.get(pl.docID(i));
+                    quantized[i] = score > 0 ? (int)Math.max(1, Math.min(MAX_IMPACT, Math.ceil((Math.log(score) - logMin) / width))) : 0;
+                    if (quantized[i] > 0) {
+                        df++;
+                    }
+                }
+                if (df > 0) {
+                    byte[] impactRecord = encode(term, pl, quantized);
+                    out.writeInt(impactRecord.length);
+                    out.write(impactRecord);
+                    dictionary.add(term, offset, df);
+                    offset += 4 + impactRecord.length;
+                }
+                record = PostingsFormat.readRecord(in);
+            }
+            in.close();
+            out.close();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(impactIndexFileName)));
+            dictionary.write(out);
+            out.close();
+        } catch (IOException e) {
+            new File(impactsFileName).delete();
+            new File(impactIndexFileName).delete();
+            throw e;
+        }
+        if (!new File(impactIndexFileName).renameTo(new File(Constants.impactIndexFileName()))
+            || !new File(impactsFileName).renameTo(new File(Constants.impactsFileName()))) {
+            delete();
+            throw new IOException("Could not rename the impacts files");
+        }
+    }
+
+    private static DataInputStream openPostings() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(Constants.postingsFileName())));
+        PostingsFormat.readHeader(in);
+        return in;
+    }
+
+    /**
+     *  Encodes the postings with an impact above 0 as a record grouped by
+     *  descending impact.
+     */
+    private static byte[] encode(String term, PostingsList pl, int[] quantized) {
+        int[] counts = new int[MAX_IMPACT + 1];
+        for (int i = 0; i < pl.size(); i++) {
+            counts[quantized[i]]++;
+        }
+        // Counting sort by descending impact, keeping the docID order
+        int[] next = new int[MAX_IMPACT + 1];
+        int numSegments = 0;
+        int n = 0;
+        for (int impact = MAX_IMPACT; impact >= 1; impact--) {
+            next[impact] = n;
+            n += counts[impact];
+            if (counts[impact] > 0) {
+                numSegments++;
+            }
+        }
+        int[] sorted = new int[n];
+        for (int i = 0; i < pl.size(); i++) {
+            if (quantized[i] > 0) {
+                sorted[next[quantized[i]]++] = pl.docID(i);
+            }
+        }
+        byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+        byte[] record = new byte[2 * VariableByteCode.MAX_BYTES + termBytes.length
+                                 + numSegments * 2 * VariableByteCode.MAX_BYTES
+                                 + n * VariableByteCode.MAX_BYTES];
+        int pos = VariableByteCode.encode(termBytes.length, record, 0);
+        System.arraycopy(termBytes, 0, record, pos, termBytes.length);
+        pos += termBytes.length;
+        pos = VariableByteCode.encode(numSegments, record, pos);
+        int i = 0;
+        for (int impact = MAX_IMPACT; impact >= 1; impact--) {
+            if (counts[impact] > 0) {
+                pos = VariableByteCode.encode(impact, record, pos);
+                pos = VariableByteCode.encode(counts[impact], record, pos);
+                int prevDocID = 0;
+                for (int end = i + counts[impact]; i < end; i++) {
+                    pos = VariableByteCode.encode(sorted[i] - prevDocID, record, pos);
+                    prevDocID = sorted[i];
+                }
+            }
+        }
+        return Arrays.copyOf(record, pos);
+    }
+}
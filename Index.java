@@ -21,6 +21,7 @@ public interface Index {
     public static final int INTERSECTION_QUERY = 0;
     public static final int PHRASE_QUERY = 1;
     public static final int RANKED_QUERY = 2;
+    public static final int PROXIMITY_QUERY = 3;
 
     /* Ranking types */
     public static final int TF_IDF = 0;
@@ -32,23 +33,32 @@ public interface Index {
     public static final int BIGRAM = 1;
     public static final int SUBPHRASE = 2;
 
-    public HashMap<String,Integer> docLengths = new HashMap<String,Integer>();
-
     public void insert( String token, int docID, int offset );
+    public void insert( int termID, int docID, int offset );
+    public TermTable getTermTable();
+    public QueryCache getQueryCache();
+    public PostingsCache getPostingsCache();
     public Iterator<String> getDictionary();
     public PostingsList getPostings( String token );
     public PostingsList search( Query query, int queryType, int rankingType, int structureType );
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType, int topK );
+    public ResultPage searchPage( Query query, int queryType, int rankingType, int structureType, int offset, int limit );
     public void cleanup();
     public int size();
+    public long byteSize();
     public void transferIndexToDisk(int blockID);
     public String getFilePath(String id);
     public void addFilePath(String key, String value);
-    public void setFilePaths(HashMap<String, String> map);
     public void setNumDocs(int n);
     public void calculateScores();
     public void setArticleTitles(HashMap<String, Integer> map);
     public void setPageRanks(HashMap<Integer, Double> map);
+    public void setIndexReader(IndexReader reader);
+    public DocumentLengths getDocumentLengths();
+    public void delete(int docID);
+    public DeletedDocs getDeletedDocs();
     public void insertBigram(String token, int docID, int offset);
+    public void insertBigram(int firstTermID, int termID, int docID, int offset);
     public void calculateBigramScores();
     public int getNumDocs();
     public void setNumBigramDocs(int bigramCount);
@@ -9,230 +9,200 @@
 package ir;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  *   Reads the index on file.
+ *
+ *   After open() the reader keeps the postings file, the docID table and
+ *   the document lengths memory mapped and the term dictionary in memory, so one reader can be
+ *   kept for the lifetime of the index.
+ *
+ *   Documents added to the index after it was built are in segments of
+ *   their own, each a postings file with its dictionary, and each with
+ *   docIDs after those of the segments before it. The postings list of
+ *   a term is the lists of all segments joined in order.
  */
 public class IndexReader {
 
-    private  static final int linearSearchThreshold = 1024;
-    
+    /** The postings file and the dictionary of each segment. */
+    private ArrayList<MappedFile> postings = new ArrayList<MappedFile>();
+    private ArrayList<TermDictionary> dictionaries = new ArrayList<TermDictionary>();
+    private MappedFile docOffsets;
+    private MappedFile docPaths;
+    private DocumentLengths docLengths;
+    private ImpactIndex impacts = null;
+
+    /** The first docID of each segment. */
+    private ArrayList<Integer> segmentStarts = new ArrayList<Integer>();
+
+    /** The deleted documents of all segments. */
+    private DeletedDocs deleted = new DeletedDocs();
+
     /**
-     *  Reads the postings list on disk for the term.
+     *  Maps the index files and loads the term dictionaries of all
+     *  segments. Returns false if the index could not be opened.
      */
-    public PostingsList readPostingsListFromFile(String term) {
+    public boolean open() {
         try {
-            RandomAccessFile raf = new RandomAccessFile(Constants.postingsFileName(), "r");
-            String postingsListString = null;
-            long offset = postingsListOffset(term);
-            if (offset != -1) {
-                raf.seek(offset);
-                postingsListString = raf.readLine();
-            }
-            raf.close();
-            return createPostingsList(postingsListString);
+            docOffsets = new MappedFile(Constants.docOffsetsFileName());
+            docPaths = new MappedFile(Constants.docPathsFileName());
+            docLengths = DocumentLengths.open(Constants.docLengthsFileName());
+            // Only the segments in the segments file, as a failed update
+            // may have left the files of one more
+            segmentStarts = readSegmentStarts();
+            for (int segment = 0; segment < segmentStarts.size(); segment++) {
+                postings.add(new MappedFile(Constants.postingsFileName(segment)));
+                MappedFile index = new MappedFile(Constants.indexFileName(segment));
+                dictionaries.add(TermDictionary.read(index.slice(0, (int)index.length())));
+            }
+            deleted = readDeletedDocs(segmentStarts);
+            // The impact ordered postings are only of the first segment
+            if (numSegments() == 1 && ImpactIndex.exists()) {
+                impacts = ImpactIndex.open(numDocs(), postings.get(0).length());
+            }
+            return true;
         } catch (IOException e) {
             e.printStackTrace();
-            return null;
+            return false;
         }
     }
 
-    public String readFilePath(String id) {
-        try {
-            RandomAccessFile raf = new RandomAccessFile(Constants.idFileName(), "r" );
-            String path = searchPath(Integer.parseInt(id), -1, raf.length()-1, raf);
-            raf.close();
-            return path;
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
+    /**
+     *  Reads the postings list of the term, or returns null if the term
+     *  is not in the index.
+     */
+    public PostingsList readPostingsList(String term) {
+        PostingsList pl = null;
+        for (int segment = 0; segment < numSegments(); segment++) {
+            TermDictionary dictionary = dictionaries.get(segment);
+            int termNumber = dictionary.lookup(term);
+            if (termNumber == -1) {
+                continue;
+            }
+            long offset = dictionary.offset(termNumber);
+            int length = postings.get(segment).getInt(offset);
+            PostingsList segmentList = PostingsFormat.decode(postings.get(segment).slice(offset + 4, length));
+            if (pl == null) {
+                pl = segmentList;
+            } else {
+                pl.append(segmentList);
+            }
         }
-        return null;
+        return pl;
     }
 
     /**
-     *  Returns the offset in the inverted index for the given term.
+     *  Returns the document frequency of the term, or 0 if the term is
+     *  not in the index.
      */
-    private long postingsListOffset(String term) {
-        try {
-            RandomAccessFile raf = new RandomAccessFile(Constants.indexFileName(), "r" );
-            long offset = search(term, -1, raf.length()-1, raf);
-            raf.close();
-            return offset;
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
+    public int documentFrequency(String term) {
+        int df = 0;
+        for (TermDictionary dictionary : dictionaries) {
+            int termNumber = dictionary.lookup(term);
+            df += termNumber == -1 ? 0 : dictionary.df(termNumber);
         }
-        return -1;
+        return df;
     }
 
     /**
-     *  Performs a binary search on the index file.
+     *  Returns the number of segments of the index.
      */
-    private long search(String element, long low, long high, RandomAccessFile raf) throws IOException {
-        if (high - low < linearSearchThreshold) {
-            return linearSearch(element, low-Constants.maxLineSize, high, raf);
-        } else {
-            long m = low + ((high - low) / 2);
-            String s = nextLine(m, raf);
-            if (s == null) {
-                return -1;
-            }
-            String[] line = s.split(" ");
-            if (line[0].compareTo(element) < 0) {
-                return search(element, m, high, raf);
-            } else if (line[0].compareTo(element) > 0) {
-                return search(element, low, m, raf);
-            } else {
-                return Long.parseLong(line[1].trim());
-            }
-        }
+    public int numSegments() {
+        return dictionaries.size();
     }
 
     /**
-     *  Performs a linear search on the index file between given boundaries.
+     *  Returns the first docID of the segment.
      */
-    private long linearSearch(String element, long low, long high, RandomAccessFile raf) throws IOException {
-        long position = low;
-        while (position < high) {
-            String s = nextLine(position, raf);
-            if (s == null) {
-                return -1;
-            }
-            String[] line = s.split(" ");
-            if (line[0].equals(element)) {
-                return Long.parseLong(line[1].trim());
-            } else if (line[0].compareTo(element) > 0) {
-                return -1;
-            } else {
-                position += s.length();
-            }
-        }
-        return -1;
+    public int segmentStart(int segment) {
+        return segment < segmentStarts.size() ? segmentStarts.get(segment) : 0;
     }
 
     /**
-     *  Performs a binary search on the index file.
+     *  Returns the deleted documents of all segments.
      */
-    private String searchPath(int element, long low, long high, RandomAccessFile raf) throws IOException {
-        if (high - low < linearSearchThreshold) {
-            return linearSearchPath(element, low-Constants.maxLineSize, high, raf);
-        } else {
-            long m = low + ((high - low) / 2);
-            String s = nextLine(m, raf);
-            if (s == null) {
-                return null;
-            }
-            String[] line = s.split(" ");
-            if (Integer.parseInt(line[0]) < element) {
-                return searchPath(element, m, high, raf);
-            } else if (Integer.parseInt(line[0]) > element) {
-                return searchPath(element, low, m, raf);
-            } else {
-                return line[1].trim();
-            }
-        }
+    public DeletedDocs deletedDocs() {
+        return deleted;
     }
 
     /**
-     *  Performs a linear search on the index file between given boundaries.
+     *  Reads the first docID of every segment, one per line. An index
+     *  without the file has one segment, starting at 0.
      */
-    private String linearSearchPath(int element, long low, long high, RandomAccessFile raf) throws IOException {
-        long position = low;
-        while (position < high) {
-            String s = nextLine(position, raf);
-            if (s == null) {
-                return null;
-            }
-            String[] line = s.split(" ");
-            if (Integer.parseInt(line[0]) == element) {
-                return line[1].trim();
-            } else if (Integer.parseInt(line[0]) > element) {
-                return null;
-            } else {
-                position += s.length();
-            }
+    public static ArrayList<Integer> readSegmentStarts() throws IOException {
+        ArrayList<Integer> segmentStarts = new ArrayList<Integer>();
+        if (!new File(Constants.segmentsFileName()).exists()) {
+            segmentStarts.add(0);
+            return segmentStarts;
+        }
+        BufferedReader br = new BufferedReader(new FileReader(Constants.segmentsFileName()));
+        String line;
+        while ((line = br.readLine()) != null) {
+            segmentStarts.add(Integer.parseInt(line.trim()));
         }
-        return null;
+        br.close();
+        return segmentStarts;
     }
 
     /**
-     *  Returns the next line of the random access file.
+     *  Reads the deleted documents of the segments starting at the
+     *  given docIDs.
      */
-    private String nextLine(long low, RandomAccessFile raf) throws IOException {
-        if (low < 0) {
-            raf.seek(0);
-        } else {
-            raf.seek(low);
-        }
-        byte[] buffer = new byte[Constants.maxLineSize];
-        int r = raf.read(buffer);
-        int lineBeginIndex = -1;
-        if (low < 0) {
-            lineBeginIndex = 0;
-        } else {
-            for (int i = 0; i < 1024; i++) {
-                if (buffer[i] == '\n') {
-                    lineBeginIndex = i + 1;
-                    break;
-                }
-            }
-        }
-        if (lineBeginIndex == -1) {
-            return null;
+    public static DeletedDocs readDeletedDocs(List<Integer> segmentStarts) throws IOException {
+        DeletedDocs deleted = new DeletedDocs();
+        for (int segment = 0; segment < segmentStarts.size(); segment++) {
+            deleted.read(Constants.deletionsFileName(segment), segmentStarts.get(segment));
         }
-        int start = lineBeginIndex;
-        for (int i = start; i < r; i++) {
-            if (buffer[i] == '\n') {
-                return new String(buffer, lineBeginIndex, i - lineBeginIndex + 1);
-            }
-        }
-        return null;
+        return deleted;
     }
 
     /**
-     *  Parses the string representing a postings list and creates a object of it.
+     *  Returns the number of documents in the index. The document
+     *  lengths are written when a segment is added, while the file paths
+     *  may already have been written for documents of a failed update.
      */
-    private PostingsList createPostingsList(String postingsListString) {
-        if (postingsListString == null) {
-            return null;
-        }
-        PostingsList pl = new PostingsList();
-        String[] s = postingsListString.split(" ");
-        for (int i = 1; i < s.length; i++) {
-            String[] e = s[i].split(",");
-            PostingsEntry pe = new PostingsEntry(Integer.parseInt(e[0]));
-            for (int j = 1; j < e.length; j++) {
-                pe.addOffset(Integer.parseInt(e[j]));
-            }
-            pl.insert(pe);
-        }
-        return pl;
+    public int numDocs() {
+        return docLengths.size();
     }
 
-    public HashMap<String, String> prepareFilePaths() {
-        BufferedReader br = null;
-        HashMap<String, String> map = new HashMap<String, String>();
-        try {
-            br = new BufferedReader(new FileReader(Constants.idFileName()));
-            String line;
-            while ((line = br.readLine()) != null && map.size() <= Constants.pathCacheMaxSize) {
-                String[] s = line.split(" ");
-                map.put(s[0], s[1]);
-            }
-            return map;
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     *  Returns the impact ordered postings, or null if there are none.
+     */
+    public ImpactIndex impacts() {
+        return impacts;
+    }
+
+    /**
+     *  Returns the lengths of the documents, as mapped by open().
+     */
+    public DocumentLengths documentLengths() {
+        return docLengths;
+    }
+
+    /**
+     *  Returns the path of the document, or null if there is no such
+     *  document.
+     */
+    public String readFilePath(String id) {
+        int docID = Integer.parseInt(id);
+        int numDocs = numDocs();
+        if (docID < 0 || docID >= numDocs) {
             return null;
-        } finally {
-            try {
-                br.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }   
+        }
+        long start = docOffsets.getLong(8L * docID);
+        long end = docID + 1 < numDocs ? docOffsets.getLong(8L * (docID + 1)) : docPaths.length();
+        ByteBuffer buf = docPaths.slice(start, (int)(end - start));
+        byte[] path = new byte[buf.remaining()];
+        buf.get(path);
+        return new String(path, StandardCharsets.UTF_8);
     }
 
     public HashMap<String, Integer> readArticleTitles() {
@@ -8,228 +8,299 @@
 
 package ir;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  *   Writes an inverted index to file
  */
 public class IndexWriter {
-    
+
+    /**
+     *  The bytes of read buffer shared by the runs of a merge, the least
+     *  a run gets, and the bytes of write buffer.
+     */
+    private static final int MERGE_BUFFER_BYTES = 16 << 20;
+    private static final int MIN_RUN_BUFFER_BYTES = 64 << 10;
+    private static final int OUTPUT_BUFFER_BYTES = 1 << 20;
+
+    /** The most files merged at once. */
+    private static final int MAX_FAN_IN = 128;
+
     /**
      *  Writes the index to given file
      */
-    public void writeIndexToDisk(HashMap<String,PostingsList> index, String fileName, HashMap<String,String> docIDs) {
-        writePostingsList(sortIndex(index), index, fileName);
+    public void writeIndexToDisk(TermTable terms, PostingsList[] postings, String fileName, HashMap<String,String> docIDs) {
+        writeRun(terms, postings, fileName);
         writeDocIDs(docIDs);
     }
 
     /**
-     *  Merges all the temporary index files into one.
+     *  Writes the postings lists, sorted by term, to the temporary file
+     *  with the given name, without any docIDs.
      */
-    public void mergeIndexFiles(int n) {
-        if (n > 1) {
-            for (int i = 1; i < n; i++) {
-                mergeFile(i);
-            }
-        } else {
-            File oldfile = new File(Constants.tempFileName("0"));
-            File newfile = new File(Constants.mergeFileName("0"));
-            oldfile.renameTo(newfile);
-        }
-        cleanupFiles(n);
-        createIndex();
+    public void writeRun(TermTable terms, PostingsList[] postings, String fileName) {
+        writePostingsList(sortIndex(terms, postings), postings, fileName);
     }
 
     /**
-     *  Returns a sorted ArrayList of the terms in the index
+     *  Merges the runs, given in the order of their docIDs, into the
+     *  postings file of the segment and writes its dictionary, in one
+     *  pass. If there are more than MAX_FAN_IN runs, which would be more
+     *  files than can be open at once, consecutive groups of them are
+     *  first merged into merge files, as many times as needed. The
+     *  postings of deleted documents are left out, unless deleted is
+     *  null. The runs are deleted as they are read if deleteRuns is true.
+     *
+     *  The files of the segment are written under other names and only
+     *  renamed to theirs once complete, so if the merge fails the
+     *  segment is left as it was and the exception is thrown.
      */
-    private ArrayList<String> sortIndex(HashMap<String,PostingsList> index) {
-        ArrayList terms = new ArrayList(index.keySet());
-        Collections.sort(terms);
-        return terms;
+    public void mergeIndexFiles(List<String> runs, int segment, DeletedDocs deleted, boolean deleteRuns) throws IOException {
+        for (int pass = 0; runs.size() > MAX_FAN_IN; pass++) {
+            ArrayList<String> merged = new ArrayList<String>();
+            for (int from = 0; from < runs.size(); from += MAX_FAN_IN) {
+                List<String> group = runs.subList(from, Math.min(from + MAX_FAN_IN, runs.size()));
+                String fileName = Constants.mergeFileName(pass + "_" + merged.size());
+                mergeRuns(group.toArray(new String[group.size()]), fileName, null, deleted, deleteRuns);
+                merged.add(fileName);
+            }
+            runs = merged;
+            // The merge files are this merge's own
+            deleteRuns = true;
+        }
+        String postingsFileName = Constants.mergeFileName("p" + segment);
+        String indexFileName = Constants.mergeFileName("i" + segment);
+        try {
+            TermDictionary dictionary = new TermDictionary();
+            mergeRuns(runs.toArray(new String[runs.size()]), postingsFileName, dictionary, deleted, deleteRuns);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFileName)));
+            dictionary.write(out);
+            out.close();
+        } catch (IOException e) {
+            new File(postingsFileName).delete();
+            new File(indexFileName).delete();
+            throw e;
+        }
+        rename(postingsFileName, Constants.postingsFileName(segment));
+        rename(indexFileName, Constants.indexFileName(segment));
+    }
+
+    private static void rename(String from, String to) throws IOException {
+        if (!new File(from).renameTo(new File(to))) {
+            throw new IOException("Could not rename " + from + " to " + to);
+        }
     }
 
     /**
-     *  Write a postings list to file
+     *  Merges the runs, given in the order of their docIDs, into the file
+     *  with the given name, adding every term to the dictionary unless it
+     *  is null. All runs are read at once, and a heap picks the run with
+     *  the smallest term next. The lists of a term found in more than one
+     *  run are concatenated in run order; other records are copied as
+     *  they are, unless documents are deleted, in which case the lists
+     *  are decoded to leave out their postings. If deleteRuns is true, a
+     *  run is deleted as soon as it has been read, so the merge takes
+     *  little more disk than the runs themselves.
      */
-    private void writePostingsList(ArrayList<String> terms, HashMap<String,PostingsList> index, String fileName) {
+    public void mergeRuns(String[] runs, String fileName, TermDictionary dictionary, DeletedDocs deleted, boolean deleteRuns) throws IOException {
+        boolean dropsPostings = deleted != null && !deleted.isEmpty();
+        int bufferSize = Math.max(MIN_RUN_BUFFER_BYTES, MERGE_BUFFER_BYTES / Math.max(1, runs.length));
+        PriorityQueue<Run> heap = new PriorityQueue<Run>(Math.max(1, runs.length));
+        ArrayList<Run> opened = new ArrayList<Run>(runs.length);
+        DataOutputStream out = null;
         try {
-            String filename = Constants.tempFileName(fileName);
-            FileWriter fw = new FileWriter(filename, true);
-            for (int t = 0; t < terms.size(); t++) {
-                String term = terms.get(t);
-                fw.write(term);
-                PostingsList pl = index.get(term);
-                for (int i = 0; i < pl.size(); i++) {
-                    PostingsEntry pe = pl.get(i);
-                    fw.write(" " + pe.docID + ",");
-                    ArrayList offsets = pe.getOffsets();
-                    for (int j = 0; j < offsets.size(); j++) {
-                        fw.write(offsets.get(j).toString());
-                        if (j != offsets.size() - 1) {
-                            fw.write(',');
-                        }
+            for (int i = 0; i < runs.length; i++) {
+                Run run = new Run(runs[i], i, bufferSize, deleteRuns);
+                opened.add(run);
+                if (run.next()) {
+                    heap.add(run);
+                }
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), OUTPUT_BUFFER_BYTES));
+            PostingsFormat.writeHeader(out);
+            long offset = PostingsFormat.HEADER_LENGTH;
+            ArrayList<Run> same = new ArrayList<Run>();
+            while (!heap.isEmpty()) {
+                same.clear();
+                same.add(heap.poll());
+                String term = same.get(0).term;
+                while (!heap.isEmpty() && heap.peek().term.equals(term)) {
+                    same.add(heap.poll());
+                }
+                byte[] record = same.get(0).record;
+                if (same.size() > 1 || dropsPostings) {
+                    PostingsList pl = PostingsFormat.decode(ByteBuffer.wrap(record));
+                    for (int i = 1; i < same.size(); i++) {
+                        pl.append(PostingsFormat.decode(ByteBuffer.wrap(same.get(i).record)));
+                    }
+                    PostingsList live = dropsPostings ? pl.without(deleted) : pl;
+                    if (live.size() == 0) {
+                        record = null;
+                    } else if (live != pl || same.size() > 1) {
+                        record = PostingsFormat.encode(term, live);
                     }
                 }
-                if (t != terms.size() - 1) {
-                    fw.write('\n');
+                if (record != null) {
+                    PostingsFormat.writeRecord(out, record);
+                    if (dictionary != null) {
+                        dictionary.add(term, offset, PostingsFormat.documentFrequency(record));
+                    }
+                    offset += 4 + record.length;
+                }
+                for (Run run : same) {
+                    if (run.next()) {
+                        heap.add(run);
+                    }
                 }
             }
-            fw.close();
-        } catch(IOException ioe) {
-            System.err.println("IOException: " + ioe.getMessage());
+            out.close();
+        } finally {
+            // Closes what a failed merge left open
+            for (Run run : opened) {
+                run.in.close();
+            }
+            if (out != null) {
+                out.close();
+            }
         }
     }
 
     /**
-     *  Writes the docID-path pairs to disk.
+     *  A temporary index file being merged, at its current record, and
+     *  ordered by the term of that record and then by its place among
+     *  the runs.
      */
-    private void writeDocIDs(HashMap<String,String> map) {
-        try {
-            String filename = Constants.idFileName();
-            FileWriter fw = new FileWriter(filename, true);
-            for (int i = Constants.nextID; map.get("" + i) != null; i++) {
-                fw.write(i + " " + map.get("" + i) + '\n');
-                Constants.nextID++;
-            }
-            fw.close();
-        } catch(IOException ioe) {
-            System.err.println("IOException: " + ioe.getMessage());
-        }   
-    }
+    private static class Run implements Comparable<Run> {
+        final String fileName;
+        final int number;
+        final boolean delete;
+        final DataInputStream in;
+        byte[] record;
+        String term;
 
-    /**
-     *  Merge the given file to the already merged files.
-     */
-    private void mergeFile(int file) {
-        String baseFilename;
-        if (file == 1) {
-            baseFilename = Constants.tempFileName("0");
-        } else {
-            baseFilename = Constants.mergeFileName(Integer.toString(file - 1));
+        Run(String fileName, int number, int bufferSize, boolean delete) throws IOException {
+            this.fileName = fileName;
+            this.number = number;
+            this.delete = delete;
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), bufferSize));
+            PostingsFormat.readHeader(in);
         }
-        try {
-            FileWriter fw = new FileWriter(Constants.mergeFileName(Integer.toString(file)));
-            BufferedReader br1 = new BufferedReader(new FileReader(baseFilename));
-            BufferedReader br2 = new BufferedReader(new FileReader(Constants.tempFileName(Integer.toString(file))));
-            String[] line1 = readTerm(br1.readLine());
-            String[] line2 = readTerm(br2.readLine());
-            while (line1 != null || line2 != null) {
-                if (line1 == null) {
-                    writePostingsList(fw, line2);
-                    line2 = readTerm(br2.readLine());
-                } else if (line2 == null) {
-                    writePostingsList(fw, line1);
-                    line1 = readTerm(br1.readLine());
-                } else if (line1[0].equals(line2[0])) {
-                    writePostingsList(fw, concatPostingsLists(line1, line2));
-                    line1 = readTerm(br1.readLine());
-                    line2 = readTerm(br2.readLine());
-                } else if (line1[0].compareTo(line2[0]) < 0) {
-                    writePostingsList(fw, line1);
-                    line1 = readTerm(br1.readLine());
-                } else {
-                    writePostingsList(fw, line2);
-                    line2 = readTerm(br2.readLine());
+
+        /**
+         *  Moves to the next record, or closes the file, deleting it if
+         *  asked to, and returns false if there is none.
+         */
+        boolean next() throws IOException {
+            record = PostingsFormat.readRecord(in);
+            if (record == null) {
+                in.close();
+                if (delete) {
+                    new File(fileName).delete();
                 }
+                return false;
             }
-            fw.close();
-            br1.close();
-            br2.close();
-        } catch (IOException ioe) {
-            System.out.println("Exception thrown  :" + ioe);
+            term = PostingsFormat.term(record);
+            return true;
         }
-    }
 
-    /**
-     *  Extracts the term from the postings list line.
-     */
-    private String[] readTerm(String line) {
-        if (line == null) {
-            return null;
-        } else {
-            return line.split(" ");
+        public int compareTo(Run other) {
+            int c = term.compareTo(other.term);
+            return c != 0 ? c : number - other.number;
         }
     }
 
     /**
-     *  Writes a postings list to given file writer.
+     *  Returns the terms of the index that have postings, sorted. This
+     *  is where the terms are materialized as Strings.
      */
-    private void writePostingsList(FileWriter fw, String[] postingsList) throws IOException {
-        fw.write(postingsList[0]);
-        for (int i = 1; i < postingsList.length; i++) {
-            fw.write(" " + postingsList[i]);
+    private ArrayList<Term> sortIndex(TermTable terms, PostingsList[] postings) {
+        ArrayList<Term> sorted = new ArrayList<Term>(terms.size());
+        for (int id = 0; id < terms.size(); id++) {
+            if (postings[id] != null) {
+                sorted.add(new Term(terms.term(id), id));
+            }
         }
-        fw.write('\n');
+        Collections.sort(sorted);
+        return sorted;
     }
 
     /**
-     * Concatenates two postings list with the same terms.
+     *  A term and its term ID, ordered by the term.
      */
-    private String[] concatPostingsLists(String[] a, String[] b) {
-        int aLen = a.length;
-        int bLen = b.length;
-        // Do not include the term for second array
-        String[] c = new String[aLen+bLen-1];
-        System.arraycopy(a, 0, c, 0, aLen);
-        System.arraycopy(b, 1, c, aLen, bLen - 1);
-        return c;
+    private static class Term implements Comparable<Term> {
+        final String term;
+        final int id;
+
+        Term(String term, int id) {
+            this.term = term;
+            this.id = id;
+        }
+
+        public int compareTo(Term other) {
+            return term.compareTo(other.term);
+        }
     }
 
     /**
-     * Deletes all temporary files and merge files used when indexing.
+     *  Write a postings list to file
      */
-    private void cleanupFiles(int numFiles) {
+    private void writePostingsList(ArrayList<Term> terms, PostingsList[] postings, String fileName) {
         try {
-            for (int i = 0; i < numFiles; i++) {
-                File file1 = new File(Constants.tempFileName(Integer.toString(i)));
-                file1.delete();
-                if (i != numFiles - 1) {
-                    File file2 = new File(Constants.mergeFileName(Integer.toString(i)));
-                    file2.delete();
-                } else {
-                    File oldfile = new File(Constants.mergeFileName(Integer.toString(i)));
-                    File newfile = new File(Constants.postingsFileName());
-                    oldfile.renameTo(newfile);
-                }
+            String filename = Constants.tempFileName(fileName);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+            PostingsFormat.writeHeader(out);
+            for (int t = 0; t < terms.size(); t++) {
+                Term term = terms.get(t);
+                PostingsFormat.writeRecord(out, PostingsFormat.encode(term.term, postings[term.id]));
             }
-        } catch(Exception e){  
-            e.printStackTrace();
+            out.close();
+        } catch(IOException ioe) {
+            System.err.println("IOException: " + ioe.getMessage());
         }
     }
 
     /**
-     * Indexing the big index based on offset.
+     *  Writes the docID-path pairs to disk. Besides the text file, the
+     *  paths are appended to a file of their own and the offset of each
+     *  path to a table with one long per docID, so that a path can be
+     *  found without searching.
      */
-    private void createIndex() {
+    private void writeDocIDs(HashMap<String,String> map) {
         try {
-            String line;
-            RandomAccessFile raf = new RandomAccessFile(Constants.postingsFileName(), "r" );
-            FileWriter fw = new FileWriter(Constants.indexFileName());
-            long offset = raf.getFilePointer();
-            line = raf.readLine();
-            line = new String(line.getBytes("ISO-8859-1"), "UTF-8");
-            while (line != null) {
-                fw.write(line.split(" ")[0] + " " + offset + "\n");
-                offset = raf.getFilePointer();
-                line = raf.readLine();
-                if (line != null) {
-                    line = new String(line.getBytes("ISO-8859-1"), "UTF-8");
-                }
+            String filename = Constants.idFileName();
+            FileWriter fw = new FileWriter(filename, true);
+            long pathOffset = new File(Constants.docPathsFileName()).length();
+            DataOutputStream offsets = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(Constants.docOffsetsFileName(), true)));
+            BufferedOutputStream paths = new BufferedOutputStream(new FileOutputStream(Constants.docPathsFileName(), true));
+            for (int i = Constants.nextID; map.get("" + i) != null; i++) {
+                String path = map.get("" + i);
+                fw.write(i + " " + path + '\n');
+                byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+                offsets.writeLong(pathOffset);
+                paths.write(bytes);
+                pathOffset += bytes.length;
+                Constants.nextID++;
             }
-            raf.close();
             fw.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+            offsets.close();
+            paths.close();
+        } catch(IOException ioe) {
+            System.err.println("IOException: " + ioe.getMessage());
+        }   
     }
 }
@@ -15,11 +15,17 @@ import java.io.FileReader;
 import java.io.StringReader;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
+import java.io.FileWriter;
 import java.io.InputStreamReader;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import org.apache.pdfbox.cos.COSDocument;
 import org.apache.pdfbox.pdfparser.*;
 import org.apache.pdfbox.util.PDFTextStripper;
@@ -40,14 +46,39 @@ public class Indexer {
     /** The current block identifier. */
     private int lastBlockID = 0;
 
-    /** The limit to store in the index before writing to file. */
-    private int memoryLimit = 70371;
-
     /** The maximum number of bigrams to store in memory. */
     private int numBigrams = 1700;
     private int numDocsApprox = 17000;
     private int bigramCount = 0;
 
+    /** The files indexed, with their modification times. */
+    private Manifest manifest = new Manifest();
+
+    /** The segment of the index on disk being built, 0 for a new index. */
+    private int segment = 0;
+
+    /** The first docID of the segment being built, and of every segment before it. */
+    private int segmentFirstDocID = 0;
+    private ArrayList<Integer> segmentStarts = new ArrayList<Integer>();
+
+    /**
+     *  When there are more segments than this, they are merged into one,
+     *  which also removes the postings of deleted documents.
+     */
+    private static final int MAX_SEGMENTS = 10;
+
+    /** Merges the runs written to disk while indexing goes on. */
+    private TieredMerger merger = new TieredMerger();
+
+    /**
+     *  A parallel build indexes the files in about BLOCKS_PER_THREAD
+     *  blocks per thread, so that idle threads have blocks to steal, but
+     *  in no smaller blocks than MIN_FILES_PER_BLOCK files, since every
+     *  block costs a merge into the index.
+     */
+    private static final int BLOCKS_PER_THREAD = 4;
+    private static final int MIN_FILES_PER_BLOCK = 32;
+
 
     /* ----------------------------------------------- */
 
@@ -67,10 +98,15 @@ public class Indexer {
 
 
     /**
-     *  Initializes the index as a HashedIndex.
+     *  Initializes the index as a HashedIndex, or as an OffHeapIndex if
+     *  an in-memory index is to be kept off the heap.
      */
     public Indexer() {
-	index = new HashedIndex();
+	if (Constants.keepInMemory && Constants.offHeap) {
+	    index = new OffHeapIndex();
+	} else {
+	    index = new HashedIndex();
+	}
     }
 
 
@@ -79,9 +115,15 @@ public class Indexer {
 
     /**
      *  Tokenizes and indexes the file @code{f}. If @code{f} is a directory,
-     *  all its files and subdirectories are recursively processed.
+     *  all its files and subdirectories are recursively processed. With
+     *  more than one indexing thread the files are indexed in parallel,
+     *  and the index is the same as if they had been indexed one by one.
      */
     public void processFiles( File f ) {
+	if (Constants.indexingThreads > 1) {
+	    processFilesInParallel( f );
+	    return;
+	}
     System.out.println(f.getAbsolutePath());
     // do not try to index fs that cannot be read
     if ( f.canRead() ) {
@@ -98,47 +140,15 @@ public class Indexer {
 		// First register the document and get a docID
 		int docID = generateDocID();
 		index.addFilePath( "" + docID, f.getPath() );
+		manifest.put( f, docID );
+		boolean indexBigrams = sampleBigrams( docID );
+		if (indexBigrams) {
+		    bigramCount++;
+		}
 		try {
-		    //  Read the first few bytes of the file to see if it is
-		    // likely to be a PDF
-		    Reader reader = new FileReader( f );
-		    char[] buf = new char[4];
-		    reader.read( buf, 0, 4 );
-		    if ( buf[0] == '%' && buf[1]=='P' && buf[2]=='D' && buf[3]=='F' ) {
-			// We assume this is a PDF file
-			try {
-			    String contents = extractPDFContents( f );
-			    reader = new StringReader( contents );
-			}
-			catch ( IOException e ) {
-			    // Perhaps it wasn't a PDF file after all
-			    reader = new FileReader( f );
-			}
-		    }
-		    else {
-			// We hope this is ordinary text
-			reader = new FileReader( f );
-		    }
-		    SimpleTokenizer tok = new SimpleTokenizer( reader );
-		    int offset = 0;
-            String prevToken = "";
-            boolean indexDoc = false;
-            Random r = new Random();
-            if (r.nextDouble() <= (double)numBigrams/(double)numDocsApprox) {
-                indexDoc = true;
-                bigramCount++;
-            }
-		    while ( tok.hasMoreTokens() ) {
-			String token = tok.nextToken();
-			insertIntoIndex( docID, token, offset );
-            if (indexDoc) {
-                insertIntoBigramIndex(docID, prevToken + "," + token, offset);
-                prevToken = token;
-            }
-            offset++;
-		    }
-		    index.docLengths.put( "" + docID, offset );
-		    reader.close();
+		    int length = indexFile( f, docID, indexBigrams, null );
+		    index.getDocumentLengths().set( docID, length );
+		    index.getQueryCache().invalidate();
 		}
 		catch ( IOException e ) {
 		    e.printStackTrace();
@@ -147,6 +157,408 @@ public class Indexer {
 	}
     }
 
+    /**
+     *  Tokenizes the file and inserts its tokens in the index of this
+     *  indexer if block is null, and in the index of the block otherwise.
+     *  Returns the number of tokens.
+     */
+    private int indexFile( File f, int docID, boolean indexBigrams, Block block ) throws IOException {
+	Index target = block == null ? index : block.index;
+	//  Read the first few bytes of the file to see if it is
+	// likely to be a PDF
+	Reader reader = new FileReader( f );
+	char[] buf = new char[4];
+	reader.read( buf, 0, 4 );
+	reader.close();
+	if ( buf[0] == '%' && buf[1]=='P' && buf[2]=='D' && buf[3]=='F' ) {
+	    // We assume this is a PDF file
+	    try {
+		String contents = extractPDFContents( f );
+		reader = new StringReader( contents );
+	    }
+	    catch ( IOException e ) {
+		// Perhaps it wasn't a PDF file after all
+		reader = new FileReader( f );
+	    }
+	}
+	else {
+	    // We hope this is ordinary text
+	    reader = new FileReader( f );
+	}
+	SimpleTokenizer tok = new SimpleTokenizer( reader );
+	int offset = 0;
+	int prevTermID = -1;
+	while ( tok.hasMoreTokens() ) {
+	    if (flushes( target, block )) {
+		// The flush clears the term IDs, so keep the previous term by name
+		String prevToken = prevTermID >= 0 ? target.getTermTable().term(prevTermID) : null;
+		if (block == null) {
+		    transferIndexToDisk();
+		} else {
+		    block.writeRun();
+		}
+		if (prevToken != null) {
+		    prevTermID = target.getTermTable().intern(prevToken);
+		}
+	    }
+	    int termID = tok.nextTermID( target.getTermTable() );
+	    target.insert( termID, docID, offset );
+	    if (indexBigrams) {
+		target.insertBigram(prevTermID, termID, docID, offset);
+		prevTermID = termID;
+	    }
+	    offset++;
+	}
+	reader.close();
+	return offset;
+    }
+
+    /**
+     *  Returns true if the index, of this indexer if block is null, has
+     *  used up its part of Constants.indexingMemoryBytes and is to be
+     *  moved out of working memory. The budget is shared evenly by the
+     *  blocks of a parallel build, which only write runs when the index
+     *  is kept on disk; otherwise they are kept until they are added to
+     *  the index of this indexer.
+     */
+    private static boolean flushes( Index target, Block block ) {
+	if (block == null) {
+	    return (!Constants.keepInMemory || Constants.offHeap)
+		&& target.byteSize() > Constants.indexingMemoryBytes;
+	}
+	return !Constants.keepInMemory
+	    && target.byteSize() > Constants.indexingMemoryBytes / Constants.indexingThreads;
+    }
+
+    /**
+     *  Returns true if the bigrams of the document are to be indexed.
+     *  About numBigrams of numDocsApprox documents are sampled, and
+     *  which ones depends only on the docID.
+     */
+    private boolean sampleBigrams( int docID ) {
+	return new Random( docID ).nextDouble() <= (double)numBigrams/(double)numDocsApprox;
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    /**
+     *  The index of a range of documents of a parallel build. Files
+     *  from to to, not including to, are indexed in order into a
+     *  HashedIndex of their own. If the index is kept on disk and the
+     *  block grows too large, it is written to a run file named after
+     *  the block, and the block goes on with an empty index.
+     */
+    private class Block {
+	final int from;
+	final int to;
+	final int firstDocID;
+	final HashedIndex index = new HashedIndex();
+	final int[] lengths;
+	final ArrayList<String> runs = new ArrayList<String>();
+	int bigramCount = 0;
+
+	Block( int from, int to, int firstDocID ) {
+	    this.from = from;
+	    this.to = to;
+	    this.firstDocID = firstDocID;
+	    lengths = new int[to - from];
+	}
+
+	void writeRun() {
+	    String run = "r" + from + "_" + runs.size();
+	    index.writeRun( run );
+	    runs.add( run );
+	}
+    }
+
+    /**
+     *  Indexes the files from to to of a parallel build, splitting the
+     *  range in two as long as it is larger than blockSize. Idle workers
+     *  of the pool steal the halves not yet started.
+     */
+    private class IndexTask extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	private final File[] files;
+	private final int firstDocID;
+	private final int blockSize;
+	private final int from;
+	private final int to;
+
+	IndexTask( File[] files, int firstDocID, int blockSize, int from, int to ) {
+	    this.files = files;
+	    this.firstDocID = firstDocID;
+	    this.blockSize = blockSize;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	protected void compute() {
+	    if (to - from > blockSize) {
+		int middle = (from + to) >>> 1;
+		invokeAll( new IndexTask( files, firstDocID, blockSize, from, middle ),
+			   new IndexTask( files, firstDocID, blockSize, middle, to ));
+		return;
+	    }
+	    Block block = new Block( from, to, firstDocID + from );
+	    for ( int i=from; i<to; i++ ) {
+		int docID = firstDocID + i;
+		boolean indexBigrams = sampleBigrams( docID );
+		if (indexBigrams) {
+		    block.bigramCount++;
+		}
+		try {
+		    int length = indexFile( files[i], docID, indexBigrams, block );
+		    block.lengths[i - from] = length;
+		}
+		catch ( IOException e ) {
+		    e.printStackTrace();
+		}
+	    }
+	    commit( block );
+	}
+    }
+
+    /** The blocks done, but waiting for the blocks before them. */
+    private TreeMap<Integer, Block> pendingBlocks = new TreeMap<Integer, Block>();
+
+    /** The first file of the next block to add to the index. */
+    private int nextBlockStart = 0;
+
+    /** True while a thread is adding blocks to the index. */
+    private boolean committing = false;
+
+    /**
+     *  Indexes all files under f on Constants.indexingThreads threads.
+     *
+     *  The directories are walked on this thread, in the same order as
+     *  by a serial build, and every file gets its docID and file path
+     *  up front. The files are then indexed in blocks of consecutive
+     *  docIDs by a ForkJoinPool. A block that is done is added to the
+     *  index of this indexer only when all blocks before it have been,
+     *  so every postings list is built in docID order.
+     */
+    private void processFilesInParallel( File f ) {
+	ArrayList<File> files = new ArrayList<File>();
+	walk( f, files );
+	indexFiles( files );
+    }
+
+    /**
+     *  Gives the files the next docIDs, in order, and indexes them on
+     *  Constants.indexingThreads threads.
+     */
+    private void indexFiles( ArrayList<File> files ) {
+	int firstDocID = lastDocID;
+	for ( int i=0; i<files.size(); i++ ) {
+	    int docID = generateDocID();
+	    index.addFilePath( "" + docID, files.get( i ).getPath() );
+	    manifest.put( files.get( i ), docID );
+	}
+	pendingBlocks.clear();
+	nextBlockStart = 0;
+	int blockSize = Math.max( MIN_FILES_PER_BLOCK, files.size() / (BLOCKS_PER_THREAD * Constants.indexingThreads) );
+	ForkJoinPool pool = new ForkJoinPool( Constants.indexingThreads );
+	try {
+	    pool.invoke( new IndexTask( files.toArray( new File[files.size()] ), firstDocID, blockSize, 0, files.size() ));
+	} finally {
+	    pool.shutdown();
+	}
+    }
+
+    /**
+     *  Prepares to add the files that are new or have changed since the
+     *  index on disk was built to the index, as a segment of its own.
+     *  The new documents get docIDs after those of the index. Only the
+     *  manifest, segments, document lengths and deletions are read; the
+     *  postings are left to the reader of finalPreparations(). Returns
+     *  false if there is no index on disk to add to.
+     */
+    public boolean openForUpdate() {
+	if (needIndexing()) {
+	    return false;
+	}
+	DocumentLengths lengths;
+	DeletedDocs deleted;
+	try {
+	    manifest = Manifest.read( Constants.manifestFileName() );
+	    segmentStarts = IndexReader.readSegmentStarts();
+	    deleted = IndexReader.readDeletedDocs( segmentStarts );
+	    lengths = DocumentLengths.open( Constants.docLengthsFileName() );
+	}
+	catch ( IOException e ) {
+	    e.printStackTrace();
+	    return false;
+	}
+	lastDocID = lengths.size();
+	Constants.nextID = lastDocID;
+	segment = segmentStarts.size();
+	segmentFirstDocID = lastDocID;
+	for ( int docID=0; docID<lengths.size(); docID++ ) {
+	    index.getDocumentLengths().set( docID, lengths.get( docID ));
+	    if (deleted.contains( docID )) {
+		index.delete( docID );
+	    }
+	}
+	return true;
+    }
+
+    /**
+     *  Indexes the files under f that are not in the manifest, or whose
+     *  modification time or length differ from it, and deletes the files
+     *  in the manifest that are no longer there. Returns the number of
+     *  files added, changed or removed. A changed file is updated: its
+     *  old document is deleted and it is indexed as a new one.
+     */
+    public int processChangedFiles( File f ) {
+	ArrayList<File> files = new ArrayList<File>();
+	walk( f, files );
+	ArrayList<File> changed = new ArrayList<File>();
+	HashSet<String> present = new HashSet<String>();
+	for ( File file : files ) {
+	    present.add( file.getPath() );
+	    if (!manifest.isCurrent( file )) {
+		deleteFile( file.getPath() );
+		changed.add( file );
+	    }
+	}
+	ArrayList<String> removed = new ArrayList<String>();
+	for ( String path : manifest.paths() ) {
+	    if (!present.contains( path ) && (path.equals( f.getPath() ) || path.startsWith( f.getPath() + File.separator ))) {
+		removed.add( path );
+	    }
+	}
+	for ( String path : removed ) {
+	    deleteFile( path );
+	}
+	indexFiles( changed );
+	return changed.size() + removed.size();
+    }
+
+    /**
+     *  Deletes the document of the file from the index. Returns false if
+     *  the file is not indexed.
+     */
+    private boolean deleteFile( String path ) {
+	Manifest.Entry entry = manifest.remove( path );
+	if (entry == null) {
+	    return false;
+	}
+	index.delete( entry.docID );
+	return true;
+    }
+
+    /**
+     *  Adds the readable files under f to the list, in the order of a
+     *  serial build.
+     */
+    private void walk( File f, ArrayList<File> files ) {
+	System.out.println(f.getAbsolutePath());
+	if ( f.canRead() ) {
+	    if ( f.isDirectory() ) {
+		String[] fs = f.list();
+		if ( fs != null ) {
+		    for ( int i=0; i<fs.length; i++ ) {
+			walk( new File( f, fs[i] ), files );
+		    }
+		}
+	    } else {
+		files.add( f );
+	    }
+	}
+    }
+
+    /**
+     *  Adds the block, and any blocks after it that were waiting for it,
+     *  to the index of this indexer. Only one thread at a time adds
+     *  blocks; if another one already is, the block is left for it, and
+     *  this thread goes back to indexing.
+     */
+    private void commit( Block block ) {
+	synchronized ( pendingBlocks ) {
+	    pendingBlocks.put( block.from, block );
+	    if (committing) {
+		limitPendingBlocks();
+		return;
+	    }
+	    committing = true;
+	}
+	while (true) {
+	    Block next;
+	    synchronized ( pendingBlocks ) {
+		next = pendingBlocks.remove( nextBlockStart );
+		if (next == null) {
+		    committing = false;
+		    limitPendingBlocks();
+		    return;
+		}
+	    }
+	    addBlock( next );
+	    synchronized ( pendingBlocks ) {
+		nextBlockStart = next.to;
+	    }
+	}
+    }
+
+    /**
+     *  Writes the indexes of the blocks waiting for the blocks before
+     *  them to runs, largest first, as long as together they take more
+     *  than a thread's part of Constants.indexingMemoryBytes, so one slow
+     *  block cannot make the blocks done after it pile up in memory.
+     *  When the index is kept in memory there are no runs, and the
+     *  blocks are kept. Called with pendingBlocks locked.
+     */
+    private void limitPendingBlocks() {
+	if (Constants.keepInMemory) {
+	    return;
+	}
+	long bytes = 0;
+	for ( Block b : pendingBlocks.values() ) {
+	    bytes += b.index.byteSize();
+	}
+	while (bytes > Constants.indexingMemoryBytes / Constants.indexingThreads) {
+	    Block largest = null;
+	    for ( Block b : pendingBlocks.values() ) {
+		if (b.index.size() > 0 && (largest == null || b.index.byteSize() > largest.index.byteSize())) {
+		    largest = b;
+		}
+	    }
+	    if (largest == null) {
+		return;
+	    }
+	    bytes -= largest.index.byteSize();
+	    largest.writeRun();
+	    bytes += largest.index.byteSize();
+	}
+    }
+
+    /**
+     *  Adds a block to the index of this indexer. Runs written by the
+     *  block are renamed to the next block IDs, after the index in
+     *  working memory has been written to disk before them, and what is
+     *  left of the block is added to the index in working memory.
+     */
+    private void addBlock( Block block ) {
+	if (!block.runs.isEmpty() && index.size() > 0) {
+	    transferIndexToDisk();
+	}
+	for ( String run : block.runs ) {
+	    String fileName = Constants.tempFileName( Integer.toString( lastBlockID++ ));
+	    new File( Constants.tempFileName( run )).renameTo( new File( fileName ));
+	    merger.add( fileName );
+	}
+	// The index is always a HashedIndex or an OffHeapIndex, made in the constructor
+	((HashedIndex)index).addBlock( block.index );
+	for ( int i=0; i<block.lengths.length; i++ ) {
+	    index.getDocumentLengths().set( block.firstDocID + i, block.lengths[i] );
+	}
+	bigramCount += block.bigramCount;
+	if (flushes( index, null )) {
+	    transferIndexToDisk();
+	}
+    }
 
     /* ----------------------------------------------- */
 
@@ -171,35 +583,119 @@ public class Indexer {
 
 
     /**
-     *  Indexes one token.
+     *  Transfers the current index in working memory to disk, or to
+     *  off-heap memory for an OffHeapIndex.
      */
-    public void insertIntoIndex( int docID, String token, int offset ) {
-		if (index.size() > memoryLimit && !Constants.keepInMemory) {
-			transferIndexToDisk();
-		}
-		index.insert( token, docID, offset );
+    public void transferIndexToDisk() {
+    	int blockID = lastBlockID++;
+    	index.transferIndexToDisk(blockID);
+    	if (!Constants.keepInMemory) {
+    		merger.add(Constants.tempFileName(Integer.toString(blockID)));
+    	}
     }
 
     /**
-     *  Indexes one bigram.
+     *  Merges all separate index files built up in the indexing into one,
+     *  once the merges going on in the background are done. The file is
+     *  the main inverted index, or the next segment of it after
+     *  openForUpdate(). If a merge fails, nothing more is written, so the
+     *  index on disk, its manifest and its segments stay as they were.
      */
-    public void insertIntoBigramIndex( int docID, String token, int offset) {
-		index.insertBigram(token, docID, offset);
+    public void mergeIndexFiles() {
+    	List<String> runs;
+    	boolean mainRewritten = segment == 0;
+    	try {
+    		runs = merger.finish();
+    		if (segment > 0 && lastDocID == segmentFirstDocID) {
+    			// Documents were only deleted, so there is no segment to add
+    			for (String run : runs) {
+    				new File(run).delete();
+    			}
+    		} else {
+    			new IndexWriter().mergeIndexFiles(runs, segment, index.getDeletedDocs(), true);
+    			addSegment();
+    		}
+    		if (segmentStarts.size() > MAX_SEGMENTS) {
+    			mergeSegments();
+    			mainRewritten = true;
+    		}
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    		return;
+    	}
+    	segment = segmentStarts.size();
+    	segmentFirstDocID = lastDocID;
+    	try {
+    		index.getDocumentLengths().write(Constants.docLengthsFileName());
+    		manifest.write(Constants.manifestFileName());
+    		writeSegments();
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	}
+    	if (mainRewritten) {
+    		// Impacts left from the main inverted index before are not of this one
+    		try {
+    			if (Constants.impactOrdered) {
+    				ImpactIndex.write(index.getDocumentLengths(), index.getDocumentLengths().size());
+    			} else {
+    				ImpactIndex.delete();
+    			}
+    		} catch (IOException e) {
+    			e.printStackTrace();
+    		}
+    	}
     }
 
     /**
-     *  Transfers the current index in working memory to disk.
+     *  Records the segment just written as the last of the index. A new
+     *  main inverted index starts a new index, so the segments left from
+     *  an index built before are deleted.
      */
-    public void transferIndexToDisk() {
-    	index.transferIndexToDisk(lastBlockID++);
+    private void addSegment() {
+    	if (segment == 0) {
+    		for (int s = 1; new File(Constants.indexFileName(s)).exists(); s++) {
+    			new File(Constants.indexFileName(s)).delete();
+    			new File(Constants.postingsFileName(s)).delete();
+    			new File(Constants.deletionsFileName(s)).delete();
+    		}
+    		segmentStarts.clear();
+    	}
+    	segmentStarts.add(segmentFirstDocID);
     }
 
     /**
-     *  Merges all separate index files built up in the indexing into one.
+     *  Merges all segments of the index on disk into the main inverted
+     *  index, leaving out the postings of deleted documents. The
+     *  segments are kept until the main inverted index has been
+     *  replaced, so a failed merge leaves them as they were.
      */
-    public void mergeIndexFiles() {
-    	IndexWriter iw = new IndexWriter();
-    	iw.mergeIndexFiles(lastBlockID);
+    private void mergeSegments() throws IOException {
+    	ArrayList<String> files = new ArrayList<String>();
+    	for (int s = 0; s < segmentStarts.size(); s++) {
+    		files.add(Constants.postingsFileName(s));
+    	}
+    	new IndexWriter().mergeIndexFiles(files, 0, index.getDeletedDocs(), false);
+    	for (int s = 1; s < segmentStarts.size(); s++) {
+    		new File(Constants.indexFileName(s)).delete();
+    		new File(Constants.postingsFileName(s)).delete();
+    		new File(Constants.deletionsFileName(s)).delete();
+    	}
+    	segmentStarts.clear();
+    	segmentStarts.add(0);
+    }
+
+    /**
+     *  Writes the first docID of every segment, and the deleted documents
+     *  of each segment to a file of its own.
+     */
+    private void writeSegments() throws IOException {
+    	FileWriter fw = new FileWriter(Constants.segmentsFileName());
+    	for (int s = 0; s < segmentStarts.size(); s++) {
+    		fw.write(segmentStarts.get(s) + "\n");
+    		int end = s + 1 < segmentStarts.size() ? segmentStarts.get(s + 1) : lastDocID;
+    		index.getDeletedDocs().write(Constants.deletionsFileName(s), segmentStarts.get(s), end);
+    	}
+    	fw.close();
     }
 
     public boolean needIndexing() {
@@ -215,10 +711,9 @@ public class Indexer {
     public void finalPreparations() {
     	IndexReader ir = new IndexReader();
         if (!Constants.keepInMemory) {
-    		HashMap<String, String> map = ir.prepareFilePaths();
-    		if (map != null) {
-    			index.setFilePaths(map);
-    			index.setNumDocs(map.size());
+    		if (ir.open()) {
+    			index.setIndexReader(ir);
+    			index.setNumDocs(ir.numDocs());
     		}
     	} else {
     		index.setNumDocs(lastDocID);
@@ -0,0 +1,115 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *   The files of the index on disk: for every file path its docID, and
+ *   the time it was last modified and its length when it was indexed.
+ *
+ *   A file whose time and length are still the same is taken to be
+ *   unchanged and is not indexed again. The manifest is a text file with
+ *   one line "docID lastModified length path" per file.
+ */
+public class Manifest {
+
+    /**
+     *  A file as it was when it was indexed.
+     */
+    public static class Entry {
+        public final int docID;
+        public final long lastModified;
+        public final long length;
+
+        Entry(int docID, long lastModified, long length) {
+            this.docID = docID;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
+    private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+
+
+    /**
+     *  Records that the file, as it is now, is indexed under the docID.
+     */
+    public void put(File f, int docID) {
+        entries.put(f.getPath(), new Entry(docID, f.lastModified(), f.length()));
+    }
+
+    /**
+     *  Returns the entry of the file path, or null if it is not indexed.
+     */
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    /**
+     *  Removes the file path, returning its entry or null.
+     */
+    public Entry remove(String path) {
+        return entries.remove(path);
+    }
+
+    /**  Returns the paths of all files */
+    public Set<String> paths() {
+        return entries.keySet();
+    }
+
+    /**
+     *  Returns true if the file is indexed and has not changed since.
+     */
+    public boolean isCurrent(File f) {
+        Entry entry = entries.get(f.getPath());
+        return entry != null && entry.lastModified == f.lastModified() && entry.length == f.length();
+    }
+
+    /**  Returns the number of files */
+    public int size() {
+        return entries.size();
+    }
+
+    public void write(String fileName) throws IOException {
+        BufferedWriter out = new BufferedWriter(new FileWriter(fileName));
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            out.write(entry.docID + " " + entry.lastModified + " " + entry.length + " " + e.getKey());
+            out.newLine();
+        }
+        out.close();
+    }
+
+    /**
+     *  Reads a manifest written by write(), or returns an empty one if
+     *  there is no such file.
+     */
+    public static Manifest read(String fileName) throws IOException {
+        Manifest manifest = new Manifest();
+        if (!new File(fileName).exists()) {
+            return manifest;
+        }
+        BufferedReader in = new BufferedReader(new FileReader(fileName));
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] s = line.split(" ", 4);
+            manifest.entries.put(s[3], new Entry(Integer.parseInt(s[0]), Long.parseLong(s[1]), Long.parseLong(s[2])));
+        }
+        in.close();
+        return manifest;
+    }
+}
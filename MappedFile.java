@@ -0,0 +1,91 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *   A read-only file memory mapped in regions of 1 GB, so that files
+ *   larger than what one MappedByteBuffer can address can be read.
+ */
+public class MappedFile {
+
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final ByteBuffer[] chunks;
+    private final long length;
+
+    public MappedFile(String fileName) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        length = channel.size();
+        chunks = new ByteBuffer[(int)((length + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = (long)i << CHUNK_BITS;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, length - start));
+        }
+        // The mappings stay valid after the channel is closed
+        channel.close();
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public byte get(long pos) {
+        return chunks[(int)(pos >>> CHUNK_BITS)].get((int)(pos & CHUNK_MASK));
+    }
+
+    public int getInt(long pos) {
+        ByteBuffer chunk = chunks[(int)(pos >>> CHUNK_BITS)];
+        int offset = (int)(pos & CHUNK_MASK);
+        if (offset + 4 <= chunk.limit()) {
+            return chunk.getInt(offset);
+        }
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (get(pos + i) & 0xFF);
+        }
+        return value;
+    }
+
+    public long getLong(long pos) {
+        ByteBuffer chunk = chunks[(int)(pos >>> CHUNK_BITS)];
+        int offset = (int)(pos & CHUNK_MASK);
+        if (offset + 8 <= chunk.limit()) {
+            return chunk.getLong(offset);
+        }
+        return ((long)getInt(pos) << 32) | (getInt(pos + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     *  Returns a buffer positioned at the given part of the file. The
+     *  buffer shares the mapped memory unless the part crosses the border
+     *  between two regions, in which case it is copied.
+     */
+    public ByteBuffer slice(long pos, int length) {
+        ByteBuffer chunk = chunks[(int)(pos >>> CHUNK_BITS)];
+        int offset = (int)(pos & CHUNK_MASK);
+        if (offset + length <= chunk.limit()) {
+            ByteBuffer buf = chunk.duplicate();
+            buf.limit(offset + length);
+            buf.position(offset);
+            return buf;
+        }
+        byte[] copy = new byte[length];
+        for (int i = 0; i < length; i++) {
+            copy[i] = get(pos + i);
+        }
+        return ByteBuffer.wrap(copy);
+    }
+}
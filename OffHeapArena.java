@@ -0,0 +1,112 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ *   Memory outside the Java heap, handed out from direct ByteBuffers of
+ *   CHUNK_SIZE bytes. Memory is only allocated, never freed one piece at
+ *   a time; it is all released when the arena is garbage collected.
+ *
+ *   An address is the chunk number in the upper 32 bits and the offset
+ *   in the chunk in the lower 32 bits. An allocation never crosses a
+ *   chunk border; one larger than CHUNK_SIZE gets a chunk of its own.
+ *   The direct memory of the JVM is limited by -XX:MaxDirectMemorySize,
+ *   which defaults to the maximum heap size.
+ */
+public class OffHeapArena {
+
+    /** Returned by no allocation, used as a null address. */
+    public static final long NULL = -1L;
+
+    private static final int CHUNK_SIZE = 64 << 20;
+
+    private ByteBuffer[] chunks = new ByteBuffer[16];
+    private int numChunks = 0;
+
+    /** The first free byte of the last chunk. */
+    private int used = 0;
+
+    /** The number of bytes of all chunks. */
+    private long byteSize = 0;
+
+
+    /**
+     *  Returns the address of size new bytes.
+     */
+    public long allocate(int size) {
+        if (numChunks == 0 || used + size > chunks[numChunks - 1].capacity()) {
+            if (numChunks == chunks.length) {
+                chunks = Arrays.copyOf(chunks, 2 * numChunks);
+            }
+            chunks[numChunks++] = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, size));
+            byteSize += chunks[numChunks - 1].capacity();
+            used = 0;
+        }
+        long address = ((long)(numChunks - 1) << 32) | used;
+        used += size;
+        return address;
+    }
+
+    public byte get(long address) {
+        return chunk(address).get(offset(address));
+    }
+
+    public int getInt(long address) {
+        return chunk(address).getInt(offset(address));
+    }
+
+    public void putInt(long address, int value) {
+        chunk(address).putInt(offset(address), value);
+    }
+
+    public long getLong(long address) {
+        return chunk(address).getLong(offset(address));
+    }
+
+    public void putLong(long address, long value) {
+        chunk(address).putLong(offset(address), value);
+    }
+
+    /**
+     *  Copies the bytes to the memory at the address.
+     */
+    public void put(long address, byte[] bytes) {
+        ByteBuffer buf = chunk(address).duplicate();
+        buf.position(offset(address));
+        buf.put(bytes);
+    }
+
+    /**
+     *  Returns a buffer over length bytes at the address, positioned at
+     *  the first of them.
+     */
+    public ByteBuffer buffer(long address, int length) {
+        ByteBuffer buf = chunk(address).duplicate();
+        buf.limit(offset(address) + length);
+        buf.position(offset(address));
+        return buf;
+    }
+
+    /**
+     *  Returns the number of bytes of direct memory held by the arena.
+     */
+    public long byteSize() {
+        return byteSize;
+    }
+
+    private ByteBuffer chunk(long address) {
+        return chunks[(int)(address >>> 32)];
+    }
+
+    private static int offset(long address) {
+        return (int)address;
+    }
+}
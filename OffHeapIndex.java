@@ -0,0 +1,248 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ *   An in-memory index that keeps its dictionary and postings outside the
+ *   Java heap, so that neither the heap nor the garbage collection pauses
+ *   grow with the corpus.
+ *
+ *   Tokens are collected in blocks on the heap as by HashedIndex. When a
+ *   block is full, or indexing is done, transferIndexToDisk moves it to an
+ *   OffHeapArena instead of to a file: every postings list is encoded as
+ *   a record of PostingsFormat and appended to the chain of records of
+ *   its term. The terms are found through an open addressing hash table
+ *   that is itself a direct buffer. getPostings decodes and joins the
+ *   records of a term, so the lists returned are short lived.
+ *
+ *   The bigram index is sampled and small, and stays on the heap.
+ */
+public class OffHeapIndex extends HashedIndex {
+
+    /*
+     *  A term entry in the arena: hash, address of the first and of the
+     *  last record, length of the term and the term in UTF-8.
+     */
+    private static final int ENTRY_HASH = 0;
+    private static final int ENTRY_FIRST = 4;
+    private static final int ENTRY_LAST = 12;
+    private static final int ENTRY_LENGTH = 20;
+    private static final int ENTRY_TERM = 24;
+
+    /*
+     *  A record in the arena: address of the next record of the term,
+     *  length of the record and the record.
+     */
+    private static final int RECORD_NEXT = 0;
+    private static final int RECORD_LENGTH = 8;
+    private static final int RECORD = 12;
+
+    private final OffHeapArena arena = new OffHeapArena();
+
+    /** The hash table, holding entry address + 1, or 0 for an empty slot. */
+    private ByteBuffer slots = ByteBuffer.allocateDirect(8 * 1024);
+    private int numSlots = 1024;
+
+    /** Number of terms in the arena. */
+    private int numTerms = 0;
+
+
+    /**
+     *  Moves the index in working memory to off-heap memory, rather than
+     *  to disk, and clears it from working memory.
+     */
+    public void transferIndexToDisk(int blockID) {
+        TermTable terms = getTermTable();
+        for (int id = 0; id < terms.size(); id++) {
+            PostingsList pl = postingsOf(id);
+            if (pl != null) {
+                String term = terms.term(id);
+                addRecord(entry(term, true), PostingsFormat.encode(term, pl));
+            }
+        }
+        clearPostings();
+    }
+
+    /**
+     *  Moves the postings lists of the block, whose documents all come
+     *  after those of this index, to off-heap memory. The bigrams stay
+     *  on the heap.
+     */
+    public void addBlock(HashedIndex block) {
+        TermTable blockTerms = block.getTermTable();
+        for (int id = 0; id < blockTerms.size(); id++) {
+            PostingsList pl = block.postingsOf(id);
+            if (pl != null) {
+                String term = blockTerms.term(id);
+                addRecord(entry(term, true), PostingsFormat.encode(term, pl));
+            }
+        }
+        addBigrams(block);
+    }
+
+    /**
+     *  Returns the postings for a specific term, or null if the term is
+     *  not in the index. The scores are calculated for the list returned.
+     */
+    public PostingsList getPostings( String token ) {
+        PostingsList pl = null;
+        long entry = entry(token, false);
+        if (entry != OffHeapArena.NULL) {
+            for (long record = arena.getLong(entry + ENTRY_FIRST); record != OffHeapArena.NULL;
+                 record = arena.getLong(record + RECORD_NEXT)) {
+                PostingsList block = PostingsFormat.decode(arena.buffer(record + RECORD, arena.getInt(record + RECORD_LENGTH)));
+                if (pl == null) {
+                    pl = block;
+                } else {
+                    pl.append(block);
+                }
+            }
+        }
+        PostingsList inMemory = super.getPostings(token);
+        if (inMemory != null) {
+            if (pl == null) {
+                return inMemory;
+            }
+            pl.append(inMemory);
+        }
+        if (pl != null) {
+            pl.calculateScores(getNumDocs());
+        }
+        return pl;
+    }
+
+    /**
+     *  Returns all the words in the index.
+     */
+    public Iterator<String> getDictionary() {
+        return new Iterator<String>() {
+            private int slot = nextSlot(0);
+
+            public boolean hasNext() {
+                return slot < numSlots;
+            }
+
+            public String next() {
+                String term = term(slots.getLong(8 * slot) - 1);
+                slot = nextSlot(slot + 1);
+                return term;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private int nextSlot(int slot) {
+                while (slot < numSlots && slots.getLong(8 * slot) == 0) {
+                    slot++;
+                }
+                return slot;
+            }
+        };
+    }
+
+    /**
+     *  Returns the number of bytes of off-heap memory used by the index.
+     */
+    public long offHeapBytes() {
+        return arena.byteSize() + slots.capacity();
+    }
+
+    /**
+     *  Appends the record to the chain of records of the entry.
+     */
+    private void addRecord(long entry, byte[] bytes) {
+        long record = arena.allocate(RECORD + bytes.length);
+        arena.putLong(record + RECORD_NEXT, OffHeapArena.NULL);
+        arena.putInt(record + RECORD_LENGTH, bytes.length);
+        arena.put(record + RECORD, bytes);
+        long last = arena.getLong(entry + ENTRY_LAST);
+        if (last == OffHeapArena.NULL) {
+            arena.putLong(entry + ENTRY_FIRST, record);
+        } else {
+            arena.putLong(last + RECORD_NEXT, record);
+        }
+        arena.putLong(entry + ENTRY_LAST, record);
+    }
+
+    /**
+     *  Returns the address of the entry of the term. If the term is not
+     *  in the arena, a new entry is added if add is true, and NULL is
+     *  returned otherwise.
+     */
+    private long entry(String term, boolean add) {
+        int h = term.hashCode();
+        byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+        int mask = numSlots - 1;
+        int slot = (h ^ (h >>> 16)) & mask;
+        long stored;
+        while ((stored = slots.getLong(8 * slot)) != 0) {
+            long entry = stored - 1;
+            if (arena.getInt(entry + ENTRY_HASH) == h && termEquals(entry, bytes)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (!add) {
+            return OffHeapArena.NULL;
+        }
+        long entry = arena.allocate(ENTRY_TERM + bytes.length);
+        arena.putInt(entry + ENTRY_HASH, h);
+        arena.putLong(entry + ENTRY_FIRST, OffHeapArena.NULL);
+        arena.putLong(entry + ENTRY_LAST, OffHeapArena.NULL);
+        arena.putInt(entry + ENTRY_LENGTH, bytes.length);
+        arena.put(entry + ENTRY_TERM, bytes);
+        slots.putLong(8 * slot, entry + 1);
+        numTerms++;
+        if (2 * numTerms > numSlots) {
+            rehash();
+        }
+        return entry;
+    }
+
+    private boolean termEquals(long entry, byte[] bytes) {
+        if (arena.getInt(entry + ENTRY_LENGTH) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (arena.get(entry + ENTRY_TERM + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String term(long entry) {
+        byte[] bytes = new byte[arena.getInt(entry + ENTRY_LENGTH)];
+        arena.buffer(entry + ENTRY_TERM, bytes.length).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void rehash() {
+        ByteBuffer oldSlots = slots;
+        int oldNumSlots = numSlots;
+        numSlots = 2 * oldNumSlots;
+        slots = ByteBuffer.allocateDirect(8 * numSlots);
+        int mask = numSlots - 1;
+        for (int i = 0; i < oldNumSlots; i++) {
+            long stored = oldSlots.getLong(8 * i);
+            if (stored != 0) {
+                int h = arena.getInt(stored - 1 + ENTRY_HASH);
+                int slot = (h ^ (h >>> 16)) & mask;
+                while (slots.getLong(8 * slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots.putLong(8 * slot, stored);
+            }
+        }
+    }
+}
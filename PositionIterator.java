@@ -0,0 +1,56 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+/**
+ *   Iterates over the offsets of one posting, decoding the delta
+ *   encoded variable byte codes in place.
+ */
+public class PositionIterator {
+
+    private byte[] buf;
+
+    /** Position of the next byte to decode. */
+    private int pos;
+
+    /** Position after the last byte of the posting. */
+    private int end;
+
+    /** The last decoded offset. */
+    private int offset;
+
+    /**
+     *  Points the iterator at the encoded offsets between start and end.
+     */
+    public void reset(byte[] buf, int start, int end) {
+        this.buf = buf;
+        this.pos = start;
+        this.end = end;
+        this.offset = 0;
+    }
+
+    public boolean hasNext() {
+        return pos < end;
+    }
+
+    /**
+     *  Returns the next offset.
+     */
+    public int next() {
+        int delta = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf[pos++];
+            delta |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        offset += delta;
+        return offset;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *   Caches postings lists read from disk, within a budget of bytes.
+ *
+ *   The cache is a segmented LRU. A list read for the first time enters
+ *   the probation segment. If it is asked for again while there, it is
+ *   promoted to the protected segment, which holds at most
+ *   PROTECTED_SHARE of the budget. Lists pushed out of the protected
+ *   segment go back to probation, and lists are only evicted from
+ *   probation, least recently used first. A scan over many lists asked
+ *   for once therefore never evicts the lists that are asked for often.
+ *   A list larger than the whole budget is never cached.
+ *
+ *   The lists handed out are the cached ones and must not be changed.
+ */
+public class PostingsCache {
+
+    /** The share of the budget for lists asked for more than once. */
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final long maxBytes;
+    private final long maxProtectedBytes;
+
+    /** Both segments, least recently used first. */
+    private final LinkedHashMap<String, PostingsList> probation = new LinkedHashMap<String, PostingsList>(16, 0.75f, true);
+    private final LinkedHashMap<String, PostingsList> protectedLists = new LinkedHashMap<String, PostingsList>(16, 0.75f, true);
+
+    private long probationBytes = 0;
+    private long protectedBytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+
+    /**
+     *  Creates a cache of lists of at most maxBytes bytes in all.
+     */
+    public PostingsCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.maxProtectedBytes = (long)(PROTECTED_SHARE * maxBytes);
+    }
+
+    /**
+     *  Returns the list cached for the term, or null.
+     */
+    public synchronized PostingsList get(String term) {
+        PostingsList pl = protectedLists.get(term);
+        if (pl == null) {
+            pl = probation.remove(term);
+            if (pl != null) {
+                probationBytes -= pl.byteSize();
+                protect(term, pl);
+            }
+        }
+        if (pl == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return pl;
+    }
+
+    /**
+     *  Caches the list of the term, which is not in the cache, on
+     *  probation.
+     */
+    public synchronized void put(String term, PostingsList pl) {
+        long bytes = pl.byteSize();
+        if (bytes > maxBytes) {
+            return;
+        }
+        probation.put(term, pl);
+        probationBytes += bytes;
+        evict();
+    }
+
+    /**
+     *  Removes all lists, as when the scores they were given are no
+     *  longer valid.
+     */
+    public synchronized void clear() {
+        probation.clear();
+        protectedLists.clear();
+        probationBytes = 0;
+        protectedBytes = 0;
+    }
+
+    /**  Returns the number of bytes of the lists cached */
+    public synchronized long byteSize() {
+        return probationBytes + protectedBytes;
+    }
+
+    /**  Returns the number of lookups answered from the cache */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**  Returns the number of lookups not answered from the cache */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     *  Moves the list to the protected segment, demoting the least
+     *  recently used protected lists to probation to make room.
+     */
+    private void protect(String term, PostingsList pl) {
+        protectedLists.put(term, pl);
+        protectedBytes += pl.byteSize();
+        Iterator<Map.Entry<String, PostingsList>> it = protectedLists.entrySet().iterator();
+        while (protectedBytes > maxProtectedBytes && it.hasNext()) {
+            Map.Entry<String, PostingsList> eldest = it.next();
+            it.remove();
+            protectedBytes -= eldest.getValue().byteSize();
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationBytes += eldest.getValue().byteSize();
+        }
+        evict();
+    }
+
+    /**
+     *  Evicts the least recently used lists on probation until the cache
+     *  is within its budget.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, PostingsList>> it = probation.entrySet().iterator();
+        while (probationBytes + protectedBytes > maxBytes && it.hasNext()) {
+            probationBytes -= it.next().getValue().byteSize();
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+/**
+ *   A forward-only position in a PostingsList, used by the query
+ *   operators to walk the postings without random access.
+ */
+public class PostingsCursor {
+
+    private final PostingsList list;
+
+    /** Index of the current posting in the list. */
+    private int index = 0;
+
+    private final PositionIterator positions = new PositionIterator();
+
+    /** The number of single steps gallop() takes before it gallops. */
+    private static final int LINEAR_STEPS = 4;
+
+    public PostingsCursor(PostingsList list) {
+        this.list = list;
+    }
+
+    /**  Returns the number of postings of the list */
+    public int size() {
+        return list.size();
+    }
+
+    /**  Returns true while the cursor points at a posting */
+    public boolean valid() {
+        return index < list.size();
+    }
+
+    /**  Moves to the next posting */
+    public void next() {
+        index++;
+    }
+
+    /**
+     *  Moves to the first posting with a docID greater than or equal to
+     *  the target, first following the skip pointers of the list and then
+     *  stepping within the skipped-to interval. Does nothing if the cursor
+     *  is already there.
+     */
+    public void advance(int target) {
+        int size = list.size();
+        if (index >= size || list.docID(index) >= target) {
+            return;
+        }
+        int numSkips = list.numSkips();
+        if (numSkips > 0) {
+            int interval = list.skipInterval();
+            int k = index / interval;
+            while (k + 1 < numSkips && list.skipDocID(k + 1) <= target) {
+                k++;
+            }
+            index = Math.max(index, k * interval);
+        }
+        while (index < size && list.docID(index) < target) {
+            index++;
+        }
+    }
+
+    /**
+     *  Moves to the first posting with a docID greater than or equal to
+     *  the target by galloping: a few single steps, as the target is often
+     *  close, then steps of 1, 2, 4, ... postings until the target is
+     *  passed and a binary search within the last step. The cost grows
+     *  with the logarithm of the distance moved, which suits a long list
+     *  followed along a much shorter one.
+     */
+    public void gallop(int target) {
+        int size = list.size();
+        int end = Math.min(index + LINEAR_STEPS, size);
+        while (index < end && list.docID(index) < target) {
+            index++;
+        }
+        if (index < end || index == size) {
+            return;
+        }
+        // docID(low) < target all along
+        int low = index - 1;
+        int step = 1;
+        while (low + step < size && list.docID(low + step) < target) {
+            low += step;
+            step <<= 1;
+        }
+        int high = Math.min(low + step, size);
+        // The first posting >= target is in (low, high]
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            if (list.docID(mid) < target) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        index = high;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public int docID() {
+        return list.docID(index);
+    }
+
+    public double score() {
+        return list.score(index);
+    }
+
+    public int termFrequency() {
+        return list.termFrequency(index);
+    }
+
+    /**
+     *  Returns the offsets of the current posting. The iterator is owned
+     *  by the cursor and is reset on every call.
+     */
+    public PositionIterator positions() {
+        list.positions(index, positions);
+        return positions;
+    }
+}
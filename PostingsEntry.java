@@ -10,17 +10,21 @@ package ir;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class PostingsEntry implements Comparable<PostingsEntry>, Serializable {
     
     public int docID;
     public double score;
 
-    private ArrayList<Integer> offsets;
+    /** The offsets, delta encoded as variable byte codes. */
+    private byte[] offsets = new byte[VariableByteCode.MAX_BYTES];
+    private int length = 0;
+    private int termFrequency = 0;
+    private int lastOffset = 0;
 
     public PostingsEntry(int docID) {
         this.docID = docID;
-        offsets = new ArrayList<Integer>();
     }
 
     /**
@@ -38,19 +42,43 @@ public class PostingsEntry implements Comparable<PostingsEntry>, Serializable {
      * Add an offset to the entry.
      */
     public void addOffset(int offset) {
-        offsets.add(offset);
+        if (length + VariableByteCode.MAX_BYTES > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        length = VariableByteCode.encode(offset - lastOffset, offsets, length);
+        lastOffset = offset;
+        termFrequency++;
+    }
+
+    /**
+     * Returns an iterator over the offsets of the entry.
+     */
+    public PositionIterator positions() {
+        PositionIterator it = new PositionIterator();
+        it.reset(offsets, 0, length);
+        return it;
     }
 
     public ArrayList<Integer> getOffsets() {
-        return offsets;
+        ArrayList<Integer> list = new ArrayList<Integer>(termFrequency);
+        PositionIterator it = positions();
+        while (it.hasNext()) {
+            list.add(it.next());
+        }
+        return list;
     }
 
     public void setOffsets(ArrayList<Integer> offsets) {
-        this.offsets = offsets;
+        length = 0;
+        termFrequency = 0;
+        lastOffset = 0;
+        for (int offset : offsets) {
+            addOffset(offset);
+        }
     }
 
     public int getTermFrequency() {
-        return offsets.size();
+        return termFrequency;
     }
 
     public void calculateScore(int numDocs, int df) {
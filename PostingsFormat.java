@@ -0,0 +1,191 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *   The binary format of the postings files.
+ *
+ *   A file starts with MAGIC and VERSION followed by one record per term,
+ *   in term order. A record is an int with the length of the rest of the
+ *   record, then (all numbers variable byte coded):
+ *
+ *     term length, term bytes (UTF-8), document frequency,
+ *     number of skip pointers, and if there are any: the skip interval
+ *     and the docID gap of every skip pointer,
+ *     for every posting: docID gap, term frequency,
+ *     length of the offsets, offsets.
+ *
+ *   The docID gap of the first posting (and the first skip pointer) is
+ *   the docID itself. The kth skip pointer points at posting
+ *   k*interval. The offsets are stored exactly as in PostingsList: delta
+ *   encoded per posting.
+ */
+public class PostingsFormat {
+
+    /** Identifies a postings file ("IRPF"). */
+    public static final int MAGIC = 0x49525046;
+
+    /** The version of the record layout. */
+    public static final int VERSION = 2;
+
+    /** The number of bytes taken by the file header. */
+    public static final int HEADER_LENGTH = 8;
+
+    public static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     *  Reads the file header, failing if the file is not a postings file
+     *  of the current version.
+     */
+    public static void readHeader(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        int version = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a postings file");
+        }
+        if (version != VERSION) {
+            throw new IOException("Unsupported postings file version " + version);
+        }
+    }
+
+    /**
+     *  Encodes the postings list of the term as a record, without the
+     *  leading length.
+     */
+    public static byte[] encode(String term, PostingsList pl) {
+        byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+        int positionsLength = pl.positionsLength();
+        int length = VariableByteCode.encodedLength(termBytes.length) + termBytes.length
+            + VariableByteCode.encodedLength(pl.size())
+            + VariableByteCode.encodedLength(positionsLength) + positionsLength;
+        int numSkips = pl.numSkips();
+        length += VariableByteCode.encodedLength(numSkips);
+        int prevDocID = 0;
+        if (numSkips > 0) {
+            length += VariableByteCode.encodedLength(pl.skipInterval());
+            for (int k = 0; k < numSkips; k++) {
+                length += VariableByteCode.encodedLength(pl.skipDocID(k) - prevDocID);
+                prevDocID = pl.skipDocID(k);
+            }
+        }
+        prevDocID = 0;
+        for (int i = 0; i < pl.size(); i++) {
+            length += VariableByteCode.encodedLength(pl.docID(i) - prevDocID);
+            length += VariableByteCode.encodedLength(pl.termFrequency(i));
+            prevDocID = pl.docID(i);
+        }
+
+        byte[] record = new byte[length];
+        int pos = VariableByteCode.encode(termBytes.length, record, 0);
+        System.arraycopy(termBytes, 0, record, pos, termBytes.length);
+        pos += termBytes.length;
+        pos = VariableByteCode.encode(pl.size(), record, pos);
+        pos = VariableByteCode.encode(numSkips, record, pos);
+        prevDocID = 0;
+        if (numSkips > 0) {
+            pos = VariableByteCode.encode(pl.skipInterval(), record, pos);
+            for (int k = 0; k < numSkips; k++) {
+                pos = VariableByteCode.encode(pl.skipDocID(k) - prevDocID, record, pos);
+                prevDocID = pl.skipDocID(k);
+            }
+        }
+        prevDocID = 0;
+        for (int i = 0; i < pl.size(); i++) {
+            pos = VariableByteCode.encode(pl.docID(i) - prevDocID, record, pos);
+            pos = VariableByteCode.encode(pl.termFrequency(i), record, pos);
+            prevDocID = pl.docID(i);
+        }
+        pos = VariableByteCode.encode(positionsLength, record, pos);
+        System.arraycopy(pl.positionBytes(), 0, record, pos, positionsLength);
+        return record;
+    }
+
+    public static void writeRecord(DataOutputStream out, byte[] record) throws IOException {
+        out.writeInt(record.length);
+        out.write(record);
+    }
+
+    /**
+     *  Reads the next record, or returns null at the end of the file.
+     */
+    public static byte[] readRecord(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        byte[] record = new byte[length];
+        in.readFully(record);
+        return record;
+    }
+
+    /**
+     *  Returns the term of the record.
+     */
+    public static String term(byte[] record) {
+        ByteBuffer buf = ByteBuffer.wrap(record);
+        int termLength = VariableByteCode.decode(buf);
+        return new String(record, buf.position(), termLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     *  Returns the document frequency of the record.
+     */
+    public static int documentFrequency(byte[] record) {
+        ByteBuffer buf = ByteBuffer.wrap(record);
+        int termLength = VariableByteCode.decode(buf);
+        buf.position(buf.position() + termLength);
+        return VariableByteCode.decode(buf);
+    }
+
+    /**
+     *  Decodes the postings list of the record starting at the current
+     *  position of the buffer. The buffer is left after the record.
+     */
+    public static PostingsList decode(ByteBuffer buf) {
+        int termLength = VariableByteCode.decode(buf);
+        buf.position(buf.position() + termLength);
+        int size = VariableByteCode.decode(buf);
+        int numSkips = VariableByteCode.decode(buf);
+        int skipInterval = 0;
+        int[] skipDocIDs = null;
+        if (numSkips > 0) {
+            skipInterval = VariableByteCode.decode(buf);
+            skipDocIDs = new int[numSkips];
+            int skipDocID = 0;
+            for (int k = 0; k < numSkips; k++) {
+                skipDocID += VariableByteCode.decode(buf);
+                skipDocIDs[k] = skipDocID;
+            }
+        }
+        int[] docIDs = new int[Math.max(size, 1)];
+        int[] termFrequencies = new int[Math.max(size, 1)];
+        int docID = 0;
+        for (int i = 0; i < size; i++) {
+            docID += VariableByteCode.decode(buf);
+            docIDs[i] = docID;
+            termFrequencies[i] = VariableByteCode.decode(buf);
+        }
+        byte[] positions = new byte[VariableByteCode.decode(buf)];
+        buf.get(positions);
+        PostingsList pl = new PostingsList(docIDs, termFrequencies, size, positions);
+        pl.setSkips(skipInterval, skipDocIDs, numSkips);
+        return pl;
+    }
+}
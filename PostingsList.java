@@ -1,65 +1,488 @@
-/*  
+/*
  *   This file is part of the computer assignment for the
  *   Information Retrieval course at KTH.
- * 
+ *
  *   First version:  Johan Boye, 2010
  *   Second version: Johan Boye, 2012
- */  
+ */
 
 package ir;
 
-import java.util.Collections;
-import java.util.LinkedList;
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  *   A list of postings for a given word.
+ *
+ *   The postings are kept in growable primitive arrays: the docIDs,
+ *   scores and term frequencies are parallel arrays, and the offsets of
+ *   all entries are stored back to back in one byte buffer where entry i
+ *   owns the bytes positionStart[i] to positionStart[i+1]. The offsets of
+ *   an entry are delta encoded as variable byte codes, starting over from
+ *   zero for every entry.
  */
 public class PostingsList implements Serializable {
-    
-    /** The postings list as a linked list. */
-    private LinkedList<PostingsEntry> list = new LinkedList<PostingsEntry>();
 
+    private static final int INITIAL_CAPACITY = 4;
+
+    /** Number of postings in the list. */
+    private int size = 0;
+
+    /** The docIDs of the postings, in insertion (ascending) order. */
+    private int[] docIDs = new int[INITIAL_CAPACITY];
+
+    /** The score of each posting. */
+    private double[] scores = new double[INITIAL_CAPACITY];
+
+    /** The number of offsets of each posting. */
+    private int[] termFrequencies = new int[INITIAL_CAPACITY];
+
+    /** Where the offsets of each posting begin in positions. */
+    private int[] positionStart = new int[INITIAL_CAPACITY + 1];
+
+    /** The encoded offsets of all postings. */
+    private byte[] positions = new byte[INITIAL_CAPACITY * 2];
+
+    /** The last offset added to the last posting. */
+    private int lastOffset = 0;
+
+    /** Lists shorter than this are not given skip pointers. */
+    private static final int MIN_SKIP_LIST_SIZE = 16;
+
+    /** The number of postings between two skip pointers. */
+    private int skipInterval = 0;
+
+    /** The docID at every skipInterval:th posting. */
+    private int[] skipDocIDs = null;
+
+    /** The number of skip pointers. */
+    private int numSkips = 0;
+
+    /** The list size the skip pointers were built for, or -1. */
+    private int skipsBuiltFor = -1;
+
+    /** An upper bound of the length normalized scores, or NaN if unknown. */
+    private double scoreBound = Double.NaN;
+
+
+    public PostingsList() {
+    }
+
+    /**
+     *  Creates a list from decoded postings. The arrays are used as they
+     *  are and must not be empty. The positions must hold the encoded
+     *  offsets of all postings, in order.
+     */
+    PostingsList(int[] docIDs, int[] termFrequencies, int size, byte[] positions) {
+        this.size = size;
+        this.docIDs = docIDs;
+        this.termFrequencies = termFrequencies;
+        this.scores = new double[docIDs.length];
+        this.positions = positions.length > 0 ? positions : new byte[INITIAL_CAPACITY];
+        this.positionStart = new int[docIDs.length + 1];
+        int pos = 0;
+        for (int i = 0; i < size; i++) {
+            positionStart[i] = pos;
+            for (int j = 0; j < termFrequencies[i]; j++) {
+                // Skip one variable byte code
+                while (positions[pos++] < 0) {
+                }
+            }
+        }
+        positionStart[size] = pos;
+        if (size > 0) {
+            PositionIterator it = new PositionIterator();
+            positions(size - 1, it);
+            while (it.hasNext()) {
+                lastOffset = it.next();
+            }
+        }
+    }
+
+    /**
+     *  Creates a list of scored postings without offsets from copies of
+     *  the first size docIDs and scores.
+     */
+    PostingsList(int[] docIDs, double[] scores, int size) {
+        int capacity = Math.max(size, INITIAL_CAPACITY);
+        this.size = size;
+        this.docIDs = Arrays.copyOf(docIDs, capacity);
+        this.scores = Arrays.copyOf(scores, capacity);
+        this.termFrequencies = new int[capacity];
+        this.positionStart = new int[capacity + 1];
+    }
 
     /**  Number of postings in this list  */
     public int size() {
-	return list.size();
+	return size;
     }
 
-    /**  Returns the ith posting */
+    /**  Returns the ith posting as a PostingsEntry */
     public PostingsEntry get( int i ) {
-	return list.get( i );
+        PostingsEntry pe = new PostingsEntry(docIDs[i]);
+        pe.score = scores[i];
+        PositionIterator it = new PositionIterator();
+        positions(i, it);
+        while (it.hasNext()) {
+            pe.addOffset(it.next());
+        }
+        return pe;
+    }
+
+    /**  Returns the docID of the ith posting */
+    public int docID(int i) {
+        return docIDs[i];
+    }
+
+    /**  Returns the score of the ith posting */
+    public double score(int i) {
+        return scores[i];
+    }
+
+    public void setScore(int i, double score) {
+        scores[i] = score;
+        scoreBound = Double.NaN;
+    }
+
+    /**
+     *  Returns the bound set by setScoreBound, or NaN if the scores have
+     *  changed since.
+     */
+    double scoreBound() {
+        return scoreBound;
+    }
+
+    void setScoreBound(double bound) {
+        scoreBound = bound;
+    }
+
+    /**
+     *  Drops all postings after the first size ones.
+     */
+    public void truncate(int size) {
+        if (size < this.size) {
+            this.size = size;
+            scoreBound = Double.NaN;
+        }
+    }
+
+    /**
+     *  Returns a new list of the first size postings, or of all if there
+     *  are fewer, with their scores but without offsets.
+     */
+    public PostingsList head(int size) {
+        return new PostingsList(docIDs, scores, Math.min(size, this.size));
+    }
+
+    /**
+     *  Returns about the number of bytes of heap memory used by the list.
+     */
+    long byteSize() {
+        long bytes = 64 + 4L * docIDs.length + 8L * scores.length + 4L * termFrequencies.length
+            + 4L * positionStart.length + positions.length;
+        if (skipDocIDs != null) {
+            bytes += 4L * skipDocIDs.length;
+        }
+        return bytes;
+    }
+
+    /**
+     *  Returns the list without the postings of deleted documents, or
+     *  this list itself if none of its documents are deleted.
+     */
+    public PostingsList without(DeletedDocs deleted) {
+        if (deleted.isEmpty()) {
+            return this;
+        }
+        int i = 0;
+        while (i < size && !deleted.contains(docIDs[i])) {
+            i++;
+        }
+        if (i == size) {
+            return this;
+        }
+        PostingsList pl = new PostingsList();
+        pl.grow(Math.max(size, INITIAL_CAPACITY));
+        pl.positions = new byte[Math.max(positionStart[size], INITIAL_CAPACITY)];
+        for (i = 0; i < size; i++) {
+            if (deleted.contains(docIDs[i])) {
+                continue;
+            }
+            int k = pl.size++;
+            pl.docIDs[k] = docIDs[i];
+            pl.scores[k] = scores[i];
+            pl.termFrequencies[k] = termFrequencies[i];
+            int length = positionStart[i + 1] - positionStart[i];
+            System.arraycopy(positions, positionStart[i], pl.positions, pl.positionStart[k], length);
+            pl.positionStart[k + 1] = pl.positionStart[k] + length;
+        }
+        if (pl.size > 0 && pl.docIDs[pl.size - 1] == docIDs[size - 1]) {
+            pl.lastOffset = lastOffset;
+        } else if (pl.size > 0) {
+            PositionIterator it = new PositionIterator();
+            pl.positions(pl.size - 1, it);
+            while (it.hasNext()) {
+                pl.lastOffset = it.next();
+            }
+        }
+        return pl;
+    }
+
+    /**  Returns the number of offsets of the ith posting */
+    public int termFrequency(int i) {
+        return termFrequencies[i];
+    }
+
+    /**  Points the iterator at the offsets of the ith posting */
+    public void positions(int i, PositionIterator it) {
+        it.reset(positions, positionStart[i], positionStart[i + 1]);
+    }
+
+    /**
+     *  Returns the number of skip pointers, building them for the
+     *  current size of the list if needed. A list gets a skip pointer
+     *  every sqrt(size) postings.
+     */
+    public int numSkips() {
+        if (skipsBuiltFor != size) {
+            if (size < MIN_SKIP_LIST_SIZE) {
+                numSkips = 0;
+                skipInterval = 0;
+            } else {
+                skipInterval = (int)Math.sqrt(size);
+                numSkips = (size + skipInterval - 1) / skipInterval;
+                skipDocIDs = new int[numSkips];
+                for (int k = 0; k < numSkips; k++) {
+                    skipDocIDs[k] = docIDs[k * skipInterval];
+                }
+            }
+            skipsBuiltFor = size;
+        }
+        return numSkips;
     }
 
+    public int skipInterval() {
+        return skipInterval;
+    }
+
+    /**  Returns the docID the kth skip pointer points at */
+    public int skipDocID(int k) {
+        return skipDocIDs[k];
+    }
+
+    /**
+     *  Sets skip pointers read from file. The kth pointer points at
+     *  posting k*interval.
+     */
+    void setSkips(int interval, int[] skipDocIDs, int numSkips) {
+        this.skipInterval = interval;
+        this.skipDocIDs = skipDocIDs;
+        this.numSkips = numSkips;
+        this.skipsBuiltFor = size;
+    }
+
+    /**  Returns the buffer holding the encoded offsets */
+    byte[] positionBytes() {
+        return positions;
+    }
+
+    /**  Returns the number of bytes used by the encoded offsets */
+    int positionsLength() {
+        return positionStart[size];
+    }
+
+    /**  Returns a cursor positioned at the first posting */
+    public PostingsCursor cursor() {
+        return new PostingsCursor(this);
+    }
+
+    /**
+     *  Appends the entry with its score and offsets, unless it has the
+     *  same docID as the last posting.
+     */
     public void insert(PostingsEntry pe) {
-        if (!duplicate(pe)) {
-            list.addLast(pe);
+        if (!duplicate(pe.docID)) {
+            addPosting(pe.docID, pe.score);
+            PositionIterator it = pe.positions();
+            while (it.hasNext()) {
+                addOffset(it.next());
+            }
         }
     }
 
     public void insert(PostingsEntry pe, int offset) {
-        insert(pe);
-        list.get(list.size() - 1).addOffset(offset);
+        insert(pe.docID, offset);
     }
 
-    private Boolean duplicate(PostingsEntry pe) {
-        if (list.size() > 0) {
-            PostingsEntry last = list.getLast();
-            if (last.docID == pe.docID) {
-                return true;
+    /**
+     *  Appends the offset to the posting for docID, creating the posting
+     *  if docID differs from the last one.
+     */
+    public void insert(int docID, int offset) {
+        if (!duplicate(docID)) {
+            addPosting(docID, 0);
+        }
+        addOffset(offset);
+    }
+
+    /**
+     *  Appends a posting without offsets, unless it has the same docID
+     *  as the last posting.
+     */
+    public void insertScored(int docID, double score) {
+        if (!duplicate(docID)) {
+            addPosting(docID, score);
+        }
+    }
+
+    /**
+     *  Appends all postings of the other list, which must come after the
+     *  postings of this list. If the first posting of the other list has
+     *  the same docID as the last posting of this list, as when a block
+     *  was flushed in the middle of a document, the two are joined.
+     */
+    public void append(PostingsList other) {
+        int first = 0;
+        if (other.size > 0 && duplicate(other.docIDs[0])) {
+            PositionIterator it = new PositionIterator();
+            other.positions(0, it);
+            while (it.hasNext()) {
+                addOffset(it.next());
             }
+            first = 1;
+        }
+        int n = other.size - first;
+        if (n == 0) {
+            return;
         }
-        return false;
+        // The offsets of a posting are encoded apart from those of other
+        // postings, so the rest can be copied as they are
+        if (size + n > docIDs.length) {
+            grow(Math.max(2 * docIDs.length, size + n));
+        }
+        System.arraycopy(other.docIDs, first, docIDs, size, n);
+        System.arraycopy(other.scores, first, scores, size, n);
+        System.arraycopy(other.termFrequencies, first, termFrequencies, size, n);
+        int from = other.positionStart[first];
+        int length = other.positionStart[other.size] - from;
+        int end = positionStart[size];
+        if (end + length > positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(2 * positions.length, end + length));
+        }
+        System.arraycopy(other.positions, from, positions, end, length);
+        for (int i = 1; i <= n; i++) {
+            positionStart[size + i] = other.positionStart[first + i] - from + end;
+        }
+        size += n;
+        lastOffset = other.lastOffset;
+        scoreBound = Double.NaN;
+    }
+
+    private boolean duplicate(int docID) {
+        return size > 0 && docIDs[size - 1] == docID;
+    }
+
+    private void addPosting(int docID, double score) {
+        if (size == docIDs.length) {
+            grow(docIDs.length * 2);
+        }
+        docIDs[size] = docID;
+        scores[size] = score;
+        termFrequencies[size] = 0;
+        positionStart[size + 1] = positionStart[size];
+        lastOffset = 0;
+        scoreBound = Double.NaN;
+        size++;
+    }
+
+    private void grow(int capacity) {
+        docIDs = Arrays.copyOf(docIDs, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+        termFrequencies = Arrays.copyOf(termFrequencies, capacity);
+        positionStart = Arrays.copyOf(positionStart, capacity + 1);
     }
 
+    private void addOffset(int offset) {
+        int end = positionStart[size];
+        if (end + VariableByteCode.MAX_BYTES > positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(positions.length * 2, end + VariableByteCode.MAX_BYTES));
+        }
+        positionStart[size] = VariableByteCode.encode(offset - lastOffset, positions, end);
+        termFrequencies[size - 1]++;
+        lastOffset = offset;
+    }
+
+    /**
+     *  Sets the tf-idf score of every posting.
+     */
+    public void calculateScores(int numDocs) {
+        double idf = Math.log((double)numDocs/(double)size);
+        for (int i = 0; i < size; i++) {
+            scores[i] = termFrequency(i)*idf;
+        }
+        scoreBound = Double.NaN;
+    }
+
+    /**
+     *  Sorts the postings by descending score, ties broken by ascending
+     *  docID.
+     */
     public void sort() {
-        Collections.sort(list);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        mergeSort(order, new int[size], 0, size);
+
+        int[] newDocIDs = new int[docIDs.length];
+        double[] newScores = new double[scores.length];
+        int[] newTermFrequencies = new int[termFrequencies.length];
+        int[] newPositionStart = new int[positionStart.length];
+        byte[] newPositions = new byte[positions.length];
+        for (int i = 0; i < size; i++) {
+            int from = order[i];
+            newDocIDs[i] = docIDs[from];
+            newScores[i] = scores[from];
+            newTermFrequencies[i] = termFrequencies[from];
+            int length = positionStart[from + 1] - positionStart[from];
+            System.arraycopy(positions, positionStart[from], newPositions, newPositionStart[i], length);
+            newPositionStart[i + 1] = newPositionStart[i] + length;
+        }
+        docIDs = newDocIDs;
+        scores = newScores;
+        termFrequencies = newTermFrequencies;
+        positionStart = newPositionStart;
+        positions = newPositions;
     }
 
-    public void setPostingsList(LinkedList<PostingsEntry> list) {
-        this.list = list;
+    private void mergeSort(int[] order, int[] tmp, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(order, tmp, from, mid);
+        mergeSort(order, tmp, mid, to);
+        int i = from;
+        int j = mid;
+        int k = from;
+        while (i < mid && j < to) {
+            if (before(order[j], order[i])) {
+                tmp[k++] = order[j++];
+            } else {
+                tmp[k++] = order[i++];
+            }
+        }
+        while (i < mid) {
+            tmp[k++] = order[i++];
+        }
+        while (j < to) {
+            tmp[k++] = order[j++];
+        }
+        System.arraycopy(tmp, from, order, from, to - from);
     }
-}
-	
 
-			   
+    private boolean before(int a, int b) {
+        int c = Double.compare(scores[b], scores[a]);
+        return c < 0 || (c == 0 && docIDs[a] < docIDs[b]);
+    }
+}
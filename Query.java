@@ -20,6 +20,10 @@ public class Query {
     public LinkedList<String> terms = new LinkedList<String>();
     public HashMap<String, Double> weights = new HashMap<String, Double>();
 
+    /** The number of tokens all terms must be within in a proximity query. */
+    public int window = DEFAULT_WINDOW;
+    public static final int DEFAULT_WINDOW = 10;
+
     /**
      *  Creates a new empty Query
      */
@@ -52,6 +56,7 @@ public class Query {
 	Query queryCopy = new Query();
 	queryCopy.terms = (LinkedList<String>) terms.clone();
 	queryCopy.weights = (HashMap<String, Double>) weights.clone();
+	queryCopy.window = window;
 	return queryCopy;
     }
 
@@ -94,7 +99,7 @@ public class Query {
             for (String term : terms.keySet()) {
                 int docFreq = indexer.index.getPostings(term).size();
                 double score = terms.get(term)*Math.log((double)numDocs/(double)docFreq);
-                score = score/indexer.index.docLengths.get(docID + "");
+                score = score/indexer.index.getDocumentLengths().get(docID);
                 /* Add term of revelant doc to new query and weigh with beta */
                 if (newQuery.get(term) == null) {
                     newQuery.put(term, score*beta);
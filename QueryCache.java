@@ -0,0 +1,154 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *   Caches the answers to the most recently used queries.
+ *
+ *   A query is keyed on its terms, their weights and how it is searched
+ *   (query, ranking and structure type, the number of results asked for
+ *   and the proximity window). Answers are kept as docID and score
+ *   arrays, without offsets, and get returns a new PostingsList of them.
+ *
+ *   Every answer is stored with the generation of the index it came
+ *   from. The index calls invalidate() whenever it changes, which makes
+ *   all answers stored before stale; they are dropped when looked up, or
+ *   evicted as least recently used. An answer computed while the index
+ *   changed is not stored at all, as put() is given the generation read
+ *   before the search.
+ */
+public class QueryCache {
+
+    private final int capacity;
+
+    private final LinkedHashMap<String, Answer> answers;
+
+    private int generation = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+
+    private static class Answer {
+        final int generation;
+        final int[] docIDs;
+        final double[] scores;
+
+        Answer(int generation, int[] docIDs, double[] scores) {
+            this.generation = generation;
+            this.docIDs = docIDs;
+            this.scores = scores;
+        }
+    }
+
+    /**
+     *  Creates a cache of the answers to at most capacity queries. A
+     *  capacity of 0 caches nothing.
+     */
+    public QueryCache(final int capacity) {
+        this.capacity = capacity;
+        answers = new LinkedHashMap<String, Answer>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Answer> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     *  Returns the key of the query searched in the given way, where
+     *  topK is 0 if all results are asked for. The order of the terms of
+     *  an intersection query does not matter, so they are sorted.
+     */
+    public static String key(Query query, int queryType, int rankingType, int structureType, int topK) {
+        String[] terms = query.terms.toArray(new String[query.terms.size()]);
+        if (queryType == Index.INTERSECTION_QUERY) {
+            Arrays.sort(terms);
+        }
+        StringBuilder key = new StringBuilder();
+        key.append(queryType).append(' ').append(rankingType).append(' ').append(structureType)
+            .append(' ').append(topK);
+        if (queryType == Index.PROXIMITY_QUERY) {
+            key.append(' ').append(query.window);
+        }
+        for (String term : terms) {
+            Double weight = query.weights.get(term);
+            key.append('\0').append(term).append('\0').append(weight == null ? 1.0 : weight.doubleValue());
+        }
+        return key.toString();
+    }
+
+    /**
+     *  Returns the answer cached for the key, or null if there is no
+     *  answer of the current generation.
+     */
+    public synchronized PostingsList get(String key) {
+        Answer answer = answers.get(key);
+        if (answer != null && answer.generation != generation) {
+            answers.remove(key);
+            answer = null;
+        }
+        if (answer == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new PostingsList(answer.docIDs, answer.scores, answer.docIDs.length);
+    }
+
+    /**
+     *  Returns the current generation, to be read before searching for
+     *  an answer that is to be put in the cache.
+     */
+    public synchronized int generation() {
+        return generation;
+    }
+
+    /**
+     *  Caches the docIDs and scores of the answer under the key, unless
+     *  the index has changed since the given generation.
+     */
+    public synchronized void put(String key, PostingsList pl, int generation) {
+        if (capacity == 0 || generation != this.generation) {
+            return;
+        }
+        int[] docIDs = new int[pl.size()];
+        double[] scores = new double[pl.size()];
+        for (int i = 0; i < pl.size(); i++) {
+            docIDs[i] = pl.docID(i);
+            scores[i] = pl.score(i);
+        }
+        answers.put(key, new Answer(generation, docIDs, scores));
+    }
+
+    /**
+     *  Makes all cached answers stale. Called whenever the index
+     *  changes, once per document while indexing, so it does no more
+     *  than count.
+     */
+    public synchronized void invalidate() {
+        generation++;
+    }
+
+    /**  Returns the number of lookups answered from the cache */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**  Returns the number of lookups not answered from the cache */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**  Returns the number of answers cached, stale ones included */
+    public synchronized int size() {
+        return answers.size();
+    }
+}
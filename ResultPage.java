@@ -0,0 +1,106 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+/**
+ *   A page of the results of a search: at most limit results, starting
+ *   at result number offset, out of total.
+ *
+ *   The page is a view of the answer of the search and copies nothing.
+ *   The file path of a result is looked up from the index the first
+ *   time it is asked for, so only the results that are shown cost a
+ *   lookup. Other pages of the same answer are had with next() and
+ *   previous(), without searching again.
+ */
+public class ResultPage {
+
+    private final Index index;
+    private final PostingsList results;
+    private final int offset;
+    private final int limit;
+    private final int size;
+
+    /** The file path of each result on the page, once looked up. */
+    private String[] filePaths = null;
+
+
+    /**
+     *  Creates the page of the results, which may be null if there are
+     *  none. An offset past the last result gives an empty page.
+     */
+    public ResultPage(Index index, PostingsList results, int offset, int limit) {
+        this.index = index;
+        this.results = results;
+        this.limit = limit;
+        int total = results == null ? 0 : results.size();
+        this.offset = Math.max(0, Math.min(offset, total));
+        this.size = Math.max(0, Math.min(limit, total - this.offset));
+    }
+
+    /**  Returns the number of the first result on the page, from 0 */
+    public int offset() {
+        return offset;
+    }
+
+    /**  Returns the number of results on the page */
+    public int size() {
+        return size;
+    }
+
+    /**  Returns the number of results of the search */
+    public int total() {
+        return results == null ? 0 : results.size();
+    }
+
+    /**  Returns the docID of the ith result on the page */
+    public int docID(int i) {
+        return results.docID(offset + i);
+    }
+
+    /**  Returns the score of the ith result on the page */
+    public double score(int i) {
+        return results.score(offset + i);
+    }
+
+    /**
+     *  Returns the file path of the ith result on the page, or null if
+     *  the index does not know it.
+     */
+    public String filePath(int i) {
+        if (filePaths == null) {
+            filePaths = new String[size];
+        }
+        if (filePaths[i] == null) {
+            filePaths[i] = index.getFilePath("" + docID(i));
+        }
+        return filePaths[i];
+    }
+
+    public boolean hasNext() {
+        return offset + size < total();
+    }
+
+    public boolean hasPrevious() {
+        return offset > 0;
+    }
+
+    /**  Returns the page after this one */
+    public ResultPage next() {
+        return new ResultPage(index, results, offset + limit, limit);
+    }
+
+    /**  Returns the page before this one */
+    public ResultPage previous() {
+        return new ResultPage(index, results, offset - limit, limit);
+    }
+
+    /**  Returns all results of the search, or null if there are none */
+    public PostingsList results() {
+        return results;
+    }
+}
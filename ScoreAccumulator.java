@@ -0,0 +1,79 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.util.Arrays;
+
+/**
+ *   Score accumulators for term-at-a-time ranking, one slot per docID.
+ *
+ *   The docIDs that have been given a score are listed as they are first
+ *   touched, so the accumulator can be read and reset in time
+ *   proportional to the number of documents scored rather than to the
+ *   size of the collection. An accumulator is meant to be reused by one
+ *   thread across queries.
+ */
+public class ScoreAccumulator {
+
+    private double[] scores = new double[0];
+    private boolean[] touched = new boolean[0];
+    private int[] touchedDocIDs = new int[16];
+    private int size = 0;
+
+
+    /**
+     *  Clears the scores of the last query and makes room for numDocs
+     *  documents.
+     */
+    public void reset(int numDocs) {
+        for (int i = 0; i < size; i++) {
+            scores[touchedDocIDs[i]] = 0;
+            touched[touchedDocIDs[i]] = false;
+        }
+        size = 0;
+        if (numDocs > scores.length) {
+            grow(numDocs);
+        }
+    }
+
+    /**
+     *  Adds to the score of the document.
+     */
+    public void add(int docID, double score) {
+        if (docID >= scores.length) {
+            grow(Math.max(docID + 1, 2 * scores.length));
+        }
+        if (!touched[docID]) {
+            touched[docID] = true;
+            if (size == touchedDocIDs.length) {
+                touchedDocIDs = Arrays.copyOf(touchedDocIDs, 2 * size);
+            }
+            touchedDocIDs[size++] = docID;
+        }
+        scores[docID] += score;
+    }
+
+    /**  Returns the number of documents given a score */
+    public int size() {
+        return size;
+    }
+
+    /**  Returns the docID of the ith document given a score */
+    public int docID(int i) {
+        return touchedDocIDs[i];
+    }
+
+    public double score(int docID) {
+        return scores[docID];
+    }
+
+    private void grow(int capacity) {
+        scores = Arrays.copyOf(scores, capacity);
+        touched = Arrays.copyOf(touched, capacity);
+    }
+}
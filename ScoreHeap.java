@@ -0,0 +1,106 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+/**
+ *   Keeps the k best scored documents seen so far, in a binary min-heap
+ *   whose root is the worst of them. Documents are ordered as in a ranked
+ *   PostingsList: by descending score, ties broken by ascending docID.
+ */
+public class ScoreHeap {
+
+    private final int k;
+    private final int[] docIDs;
+    private final double[] scores;
+    private int size = 0;
+
+    public ScoreHeap(int k) {
+        this.k = k;
+        docIDs = new int[k];
+        scores = new double[k];
+    }
+
+    /**  Returns true once the heap holds k documents */
+    public boolean full() {
+        return size == k;
+    }
+
+    /**  Returns the score of the worst document kept */
+    public double minScore() {
+        return scores[0];
+    }
+
+    /**
+     *  Adds the document if it is among the k best so far.
+     */
+    public void offer(int docID, double score) {
+        if (size < k) {
+            docIDs[size] = docID;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (k > 0 && worse(0, docID, score)) {
+            docIDs[0] = docID;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     *  Returns the documents kept, best first.
+     */
+    public PostingsList toPostingsList() {
+        PostingsList answer = new PostingsList();
+        for (int i = 0; i < size; i++) {
+            answer.insertScored(docIDs[i], scores[i]);
+        }
+        answer.sort();
+        return answer;
+    }
+
+    /**  Returns true if entry i ranks below the given document */
+    private boolean worse(int i, int docID, double score) {
+        return scores[i] < score || (scores[i] == score && docIDs[i] > docID);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!worse(i, docIDs[parent], scores[parent])) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && worse(child + 1, docIDs[child], scores[child])) {
+                child++;
+            }
+            if (!worse(child, docIDs[i], scores[i])) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int docID = docIDs[i];
+        docIDs[i] = docIDs[j];
+        docIDs[j] = docID;
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
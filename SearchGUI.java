@@ -34,6 +34,12 @@ public class SearchGUI extends JFrame {
 	
     /**  The returned documents, used in search() and relevanceFeedbackSearch() */
     private PostingsList results; 
+
+    /**  The page of the returned documents that is shown */
+    private ResultPage page;
+
+    /**  The number of documents shown on a page */
+    static final int PAGE_SIZE = 20;
 	
     /**  Directories that should be indexed. */
     LinkedList<String> dirNames = new LinkedList<String>();
@@ -83,6 +89,7 @@ public class SearchGUI extends JFrame {
     JRadioButtonMenuItem intersectionItem = new JRadioButtonMenuItem( "Intersection query" );
     JRadioButtonMenuItem phraseItem = new JRadioButtonMenuItem( "Phrase query" );
     JRadioButtonMenuItem rankedItem = new JRadioButtonMenuItem( "Ranked retrieval" );
+    JRadioButtonMenuItem proximityItem = new JRadioButtonMenuItem( "Proximity query" );
     JRadioButtonMenuItem tfidfItem = new JRadioButtonMenuItem( "tf-idf" );
     JRadioButtonMenuItem pagerankItem = new JRadioButtonMenuItem( "PageRank" );
     JRadioButtonMenuItem combinationItem = new JRadioButtonMenuItem( "Combination" );
@@ -95,6 +102,10 @@ public class SearchGUI extends JFrame {
     public JPanel feedbackBar = new JPanel(); 
     JCheckBox[] feedbackButton = new JCheckBox[10];
     JToggleButton feedbackExecutor = new JToggleButton("New search"); 
+    public JPanel pageBar = new JPanel();
+    JButton previousButton = new JButton( "Previous" );
+    JButton nextButton = new JButton( "Next" );
+    JLabel pageLabel = new JLabel( "" );
 
 
     /* ----------------------------------------------- */
@@ -120,6 +131,7 @@ public class SearchGUI extends JFrame {
 	optionsMenu.add( intersectionItem );
 	optionsMenu.add( phraseItem );
 	optionsMenu.add( rankedItem );
+	optionsMenu.add( proximityItem );
 	rankingMenu.add( tfidfItem ); 
 	rankingMenu.add( pagerankItem ); 
 	rankingMenu.add( combinationItem ); 
@@ -129,6 +141,7 @@ public class SearchGUI extends JFrame {
 	queries.add( intersectionItem );
 	queries.add( phraseItem );
 	queries.add( rankedItem );
+	queries.add( proximityItem );
 	ranking.add( tfidfItem ); 
 	ranking.add( pagerankItem );
 	ranking.add( combinationItem ); 
@@ -155,6 +168,13 @@ public class SearchGUI extends JFrame {
 	// Display area for search results
 	p.add( resultPane );
 	resultWindow.setFont( resultFont );
+	// Paging through the results
+	pageBar.add( previousButton );
+	pageBar.add( pageLabel );
+	pageBar.add( nextButton );
+	previousButton.setEnabled( false );
+	nextButton.setEnabled( false );
+	p.add( pageBar );
 	// Relevance feedback
 	for ( int i = 0; i<10; i++ ) {
 	    feedbackButton[i] = new JCheckBox( i+"" );
@@ -174,31 +194,10 @@ public class SearchGUI extends JFrame {
 		    // we don't want to search at the same time we're indexing new files
 		    // (this might corrupt the index).
 		    synchronized ( indexLock ) {
-			results = indexer.index.search( query, queryType, rankingType, structureType ); 
-		    }
-		    StringBuffer buf = new StringBuffer();
-		    if ( results != null ) {
-			buf.append( "\nFound " + results.size() + " matching document(s)\n\n" );
-			for ( int i=0; i<results.size(); i++ ) {
-			    buf.append( " " + i + ". " );
-			    String filename = indexer.index.getFilePath( "" + results.get(i).docID );
-			    if ( filename == null ) {
-				buf.append( "" + results.get(i).docID );
-			    }
-			    else {
-				buf.append( filename );
-			    }
-			    if ( queryType == Index.RANKED_QUERY ) {
-				buf.append( "   " + String.format( "%.10f", results.get(i).score )); 
-			    }
-			    buf.append( "\n" );
-			}
+			page = indexer.index.searchPage( query, queryType, rankingType, structureType, 0, PAGE_SIZE ); 
 		    }
-		    else {
-			buf.append( "\nFound 0 matching document(s)\n\n" );
-		    }
-		    resultWindow.setText( buf.toString() );
-		    resultWindow.setCaretPosition( 0 );
+		    results = page.results();
+		    showPage( "" );
 		}
 	    };
 	queryWindow.registerKeyboardAction( search,
@@ -209,12 +208,12 @@ public class SearchGUI extends JFrame {
 	Action relevanceFeedbackSearch = new AbstractAction() { 
 		public void actionPerformed( ActionEvent e ) {
 		    // Check that a ranked search has been made prior to the relevance feedback
-		    StringBuffer buf = new StringBuffer();
 		    if (( results != null ) && ( queryType == Index.RANKED_QUERY )) {
-			// Read user relevance feedback selections
-			boolean[] docIsRelevant = { false, false, false, false, false, false, false, false, false, false }; 
-			for ( int i = 0; i<10; i++ ) {
-			    docIsRelevant[i] = feedbackButton[i].isSelected(); 
+			// Read user relevance feedback selections, which are for the
+			// first results on the page shown
+			boolean[] docIsRelevant = new boolean[page.offset() + feedbackButton.length];
+			for ( int i = 0; i<feedbackButton.length; i++ ) {
+			    docIsRelevant[page.offset() + i] = i < page.size() && feedbackButton[i].isSelected(); 
 			}
 			// Expand the current search query with the documents marked as relevant 
 			query.relevanceFeedback( results, docIsRelevant, indexer );
@@ -223,30 +222,34 @@ public class SearchGUI extends JFrame {
 			// synchronized since we don't want to search at the same time we're indexing new files
 			// (this might corrupt the index).
 			synchronized ( indexLock ) {
-			    results = indexer.index.search( query, queryType, rankingType, structureType );
-			}
-			buf.append( "\nSearch after relevance feedback:\n" );
-			buf.append( "\nFound " + results.size() + " matching document(s)\n\n" );
-			for ( int i=0; i<results.size(); i++ ) {
-			    buf.append( " " + i + ". " );
-			    String filename = indexer.index.getFilePath( "" + results.get(i).docID );
-			    if ( filename == null ) {
-				buf.append( "" + results.get(i).docID );
-			    }
-			    else {
-				buf.append( filename );
-			    }
-			    buf.append( "   " + String.format( "%.5f", results.get(i).score ) + "\n" );
+			    page = indexer.index.searchPage( query, queryType, rankingType, structureType, 0, PAGE_SIZE );
 			}
+			results = page.results();
+			showPage( "\nSearch after relevance feedback:\n" );
 		    }
 		    else {
-			buf.append( "\nThere was no returned ranked list to give feedback on.\n\n" );
+			resultWindow.setText( "\nThere was no returned ranked list to give feedback on.\n\n" );
+			resultWindow.setCaretPosition( 0 );
 		    }
-		    resultWindow.setText( buf.toString() );
-		    resultWindow.setCaretPosition( 0 );
 		}
 	    };
 	feedbackExecutor.addActionListener( relevanceFeedbackSearch ); 	
+
+	Action previousPage = new AbstractAction() {
+		public void actionPerformed( ActionEvent e ) {
+		    page = page.previous();
+		    showPage( "" );
+		}
+	    };
+	previousButton.addActionListener( previousPage );
+
+	Action nextPage = new AbstractAction() {
+		public void actionPerformed( ActionEvent e ) {
+		    page = page.next();
+		    showPage( "" );
+		}
+	    };
+	nextButton.addActionListener( nextPage );
 	
 	Action saveAndQuit = new AbstractAction() {
 		public void actionPerformed( ActionEvent e ) {
@@ -287,6 +290,13 @@ public class SearchGUI extends JFrame {
 	    };
 	rankedItem.addActionListener( setRankedQuery );
 
+	Action setProximityQuery = new AbstractAction() {
+		public void actionPerformed( ActionEvent e ) {
+		    queryType = Index.PROXIMITY_QUERY;
+		}
+	    };
+	proximityItem.addActionListener( setProximityQuery );
+
 	Action setTfidfRanking = new AbstractAction() {
 		public void actionPerformed( ActionEvent e ) {
 			rankingType = Index.TF_IDF;
@@ -334,6 +344,49 @@ public class SearchGUI extends JFrame {
     /* ----------------------------------------------- */
    
 
+    /**
+     *   Shows the current page of results below the header. Only the
+     *   file paths of the documents on the page are looked up.
+     */
+    private void showPage( String header ) {
+	StringBuffer buf = new StringBuffer( header );
+	buf.append( "\nFound " + page.total() + " matching document(s)\n\n" );
+	for ( int i=0; i<page.size(); i++ ) {
+	    buf.append( " " + (page.offset() + i) + ". " );
+	    String filename = page.filePath( i );
+	    if ( filename == null ) {
+		buf.append( "" + page.docID( i ));
+	    }
+	    else {
+		buf.append( filename );
+	    }
+	    if ( queryType == Index.RANKED_QUERY ) {
+		buf.append( "   " + String.format( "%.10f", page.score( i ))); 
+	    }
+	    buf.append( "\n" );
+	}
+	resultWindow.setText( buf.toString() );
+	resultWindow.setCaretPosition( 0 );
+	if ( page.size() > 0 ) {
+	    pageLabel.setText( (page.offset() + 1) + "-" + (page.offset() + page.size()) + " of " + page.total() );
+	}
+	else {
+	    pageLabel.setText( "" );
+	}
+	previousButton.setEnabled( page.hasPrevious() );
+	nextButton.setEnabled( page.hasNext() );
+	// The feedback boxes are numbered as the first results on the page
+	for ( int i=0; i<feedbackButton.length; i++ ) {
+	    feedbackButton[i].setText( "" + (page.offset() + i) );
+	    feedbackButton[i].setSelected( false );
+	    feedbackButton[i].setEnabled( i < page.size() );
+	}
+    }
+
+
+    /* ----------------------------------------------- */
+
+
     /**
      *   Calls the indexer to index the chosen directory structure.
      *   Access to the index is synchronized since we don't want to 
@@ -351,6 +404,19 @@ public class SearchGUI extends JFrame {
 		    if (!Constants.keepInMemory) {
 		    	indexer.transferIndexToDisk();
 		    	indexer.mergeIndexFiles();
+		    } else if (Constants.offHeap) {
+		    	indexer.transferIndexToDisk();
+		    }
+	    } else if (indexer.openForUpdate()) {
+		    // Add the files that are new or changed since the index was built
+		    int changed = 0;
+		    for ( int i=0; i<dirNames.size(); i++ ) {
+			changed += indexer.processChangedFiles( new File( dirNames.get( i )));
+		    }
+		    System.out.println( "Found " + changed + " new or changed files" );
+		    if (changed > 0) {
+		    	indexer.transferIndexToDisk();
+		    	indexer.mergeIndexFiles();
 		    }
 	    }
 	    resultWindow.setText( "\n  Loading..." );
@@ -376,6 +442,26 @@ public class SearchGUI extends JFrame {
 		    dirNames.add( args[i++] );
 		}
 	    }
+	    else if ( "-m".equals( args[i] )) {
+		// The indexing memory budget in megabytes
+		i++;
+		if ( i < args.length ) {
+		    String value = args[i++];
+		    long megabytes = 0;
+		    try {
+			megabytes = Long.parseLong( value );
+		    }
+		    catch ( NumberFormatException e ) {
+			// Rejected below, like any other value that is not positive
+		    }
+		    if ( megabytes > 0 && megabytes <= Long.MAX_VALUE >> 20 ) {
+			Constants.indexingMemoryBytes = megabytes << 20;
+		    }
+		    else {
+			System.err.println( "Invalid memory budget: " + value + " (megabytes, a positive number)" );
+		    }
+		}
+	    }
 	    else {
 		System.err.println( "Unknown option: " + args[i] );
 		break;
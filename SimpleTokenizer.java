@@ -34,8 +34,14 @@ public class SimpleTokenizer {
     /** Starting position of current token, or -1 if we're between tokens. */
     int tokenStart = -1;
 
-    /** The next token to emit. */
-    String nextTok;
+    /** The next token to emit, with '#' removed. */
+    char[] nextTok = new char[64];
+
+    /** The length of the next token. */
+    int nextTokLength = 0;
+
+    /** @code{true} if @code{nextTok} holds a token. */
+    boolean hasNextTok = false;
 
     /** @code{true} if we've started reading tokens. */
     boolean started_reading = false;
@@ -111,10 +117,10 @@ public class SimpleTokenizer {
      */
     public boolean hasMoreTokens() throws IOException {
 	if ( !started_reading ) {
-	    nextTok = readToken();
+	    hasNextTok = readToken();
 	    started_reading = true;
 	}
-	return ( nextTok != null );
+	return hasNextTok;
     }
     
 
@@ -123,38 +129,47 @@ public class SimpleTokenizer {
      *  are no more tokens.
      */
     public String nextToken() throws IOException { 
-	String s = null;
-	if ( !started_reading ) {
-	    s = readToken();
-	    if ( s != null ) {
-		s = s.replaceAll( "#", "" );
-		nextTok = readToken();
-	    }
-	    return s;
+	if ( !hasMoreTokens() ) {
+	    return null;
 	}
-	else {
-	    if ( nextTok != null ) {
-		s = nextTok.replaceAll( "#", "" );
-	    }
-	    nextTok = readToken();
-	    return s;
+	String s = new String( nextTok, 0, nextTokLength );
+	hasNextTok = readToken();
+	return s;
+    }
+
+
+    /**
+     *  Interns the next token in the table without creating a String.
+     *
+     *  @return the term ID of the next token, or -1 if there are no
+     *  more tokens.
+     */
+    public int nextTermID( TermTable table ) throws IOException {
+	if ( !hasMoreTokens() ) {
+	    return -1;
 	}
+	int termID = table.intern( nextTok, 0, nextTokLength );
+	hasNextTok = readToken();
+	return termID;
     }
 
 
     /**
-     *  Reads the next token. 
+     *  Reads the next token into @code{nextTok}.
+     *
+     *  @return @code{true} if a token was read, and @code{false} if
+     *  there are no more tokens.
      */ 
-    private String readToken() throws IOException {
+    private boolean readToken() throws IOException {
 	if ( started_reading && buf[ptr] == 0 ) {
 	    // No more tokens to be read
-	    return null;
+	    return false;
 	}
 	if ( !started_reading ) {
 	    refillBuffer( 0 );
 	    started_reading = true;
 	}
-	String token_found = null;
+	boolean token_found = false;
 	while ( buf[ptr] != 0 ) {
 	    if ( tokenStart < 0 ) {
 		if ( !normalize( buf, ptr )) {
@@ -173,7 +188,8 @@ public class SimpleTokenizer {
 		}
 		else {
 		    // End of token
-		    token_found = new String( buf, tokenStart, ptr-tokenStart );
+		    copyToken( tokenStart, ptr );
+		    token_found = true;
 		    tokenStart = -1;
 		    ptr++;
 		}
@@ -194,11 +210,28 @@ public class SimpleTokenizer {
 		    ptr = 0;
 		}
 	    }
-	    if ( token_found != null ) {
-		return token_found;
+	    if ( token_found ) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+
+    /**
+     *  Copies @code{buf[start]} to @code{buf[end]} into @code{nextTok},
+     *  leaving out '#'.
+     */
+    private void copyToken( int start, int end ) {
+	if ( end - start > nextTok.length ) {
+	    nextTok = new char[ Math.max( end - start, 2 * nextTok.length ) ];
+	}
+	nextTokLength = 0;
+	for ( int i=start; i<end; i++ ) {
+	    if ( buf[i] != '#' ) {
+		nextTok[nextTokLength++] = buf[i];
 	    }
 	}
-	return null;
     }
 
 
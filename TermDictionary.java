@@ -0,0 +1,236 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *   A sorted term dictionary kept in memory with front coding.
+ *
+ *   The terms are stored as UTF-8 in one byte array, in blocks of
+ *   BLOCK_SIZE terms. The first term of a block is stored whole (length,
+ *   bytes) and every other term as the length of the prefix it shares
+ *   with the term before it, the length of the rest and the rest. A
+ *   lookup binary searches the first terms of the blocks and then scans
+ *   one block. Terms are compared bytewise, which agrees with the
+ *   String order the index is sorted in for the characters a token can
+ *   contain.
+ *
+ *   For every term the dictionary also keeps the offset of its postings
+ *   list in the postings file and its document frequency.
+ */
+public class TermDictionary {
+
+    /** Identifies a dictionary file ("IRTD"). */
+    public static final int MAGIC = 0x49525444;
+
+    /** The version of the file layout. */
+    public static final int VERSION = 1;
+
+    /** The number of terms in a front coded block. */
+    private static final int BLOCK_SIZE = 16;
+
+    private int size = 0;
+    private byte[] terms = new byte[1024];
+    private int termsLength = 0;
+    private int[] blockStart = new int[16];
+    private long[] offsets = new long[16];
+    private int[] dfs = new int[16];
+
+    /** The last added term, used for front coding while building. */
+    private byte[] lastTerm = new byte[0];
+
+
+    /**
+     *  Adds a term. Terms must be added in sorted order.
+     */
+    public void add(String term, long offset, int df) {
+        byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            dfs = Arrays.copyOf(dfs, size * 2);
+        }
+        int numBlocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (size % BLOCK_SIZE == 0 && numBlocks == blockStart.length) {
+            blockStart = Arrays.copyOf(blockStart, numBlocks * 2);
+        }
+        ensureTermsCapacity(termsLength + bytes.length + 2 * VariableByteCode.MAX_BYTES);
+        if (size % BLOCK_SIZE == 0) {
+            blockStart[size / BLOCK_SIZE] = termsLength;
+            termsLength = VariableByteCode.encode(bytes.length, terms, termsLength);
+            System.arraycopy(bytes, 0, terms, termsLength, bytes.length);
+            termsLength += bytes.length;
+        } else {
+            int prefix = 0;
+            while (prefix < bytes.length && prefix < lastTerm.length && bytes[prefix] == lastTerm[prefix]) {
+                prefix++;
+            }
+            termsLength = VariableByteCode.encode(prefix, terms, termsLength);
+            termsLength = VariableByteCode.encode(bytes.length - prefix, terms, termsLength);
+            System.arraycopy(bytes, prefix, terms, termsLength, bytes.length - prefix);
+            termsLength += bytes.length - prefix;
+        }
+        offsets[size] = offset;
+        dfs[size] = df;
+        lastTerm = bytes;
+        size++;
+    }
+
+    private void ensureTermsCapacity(int capacity) {
+        if (capacity > terms.length) {
+            terms = Arrays.copyOf(terms, Math.max(capacity, terms.length * 2));
+        }
+    }
+
+    /**  Number of terms in the dictionary */
+    public int size() {
+        return size;
+    }
+
+    /**  Returns the postings file offset of the ith term */
+    public long offset(int i) {
+        return offsets[i];
+    }
+
+    /**  Returns the document frequency of the ith term */
+    public int df(int i) {
+        return dfs[i];
+    }
+
+    /**
+     *  Returns the number of the term, or -1 if it is not in the
+     *  dictionary.
+     */
+    public int lookup(String term) {
+        if (size == 0) {
+            return -1;
+        }
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int numBlocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        // Find the last block whose first term is <= key
+        int low = 0;
+        int high = numBlocks - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (compareFirstTerm(mid, key) <= 0) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int block = low;
+
+        // Scan the block, rebuilding each term from its predecessor
+        byte[] current = new byte[64];
+        int pos = blockStart[block];
+        int length = 0;
+        int end = Math.min(size, (block + 1) * BLOCK_SIZE);
+        for (int i = block * BLOCK_SIZE; i < end; i++) {
+            int prefix = 0;
+            if (i % BLOCK_SIZE != 0) {
+                prefix = VariableByteCode.decode(terms, pos);
+                pos += VariableByteCode.encodedLength(prefix);
+            }
+            int suffix = VariableByteCode.decode(terms, pos);
+            pos += VariableByteCode.encodedLength(suffix);
+            length = prefix + suffix;
+            if (length > current.length) {
+                current = Arrays.copyOf(current, Math.max(length, current.length * 2));
+            }
+            System.arraycopy(terms, pos, current, prefix, suffix);
+            pos += suffix;
+            int c = compare(current, 0, length, key);
+            if (c == 0) {
+                return i;
+            } else if (c > 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *  Compares the first term of the block with the key.
+     */
+    private int compareFirstTerm(int block, byte[] key) {
+        int pos = blockStart[block];
+        int length = VariableByteCode.decode(terms, pos);
+        return compare(terms, pos + VariableByteCode.encodedLength(length), length, key);
+    }
+
+    private static int compare(byte[] a, int from, int length, byte[] key) {
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int c = (a[from + i] & 0xFF) - (key[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length - key.length;
+    }
+
+    /**
+     *  Returns an estimate of the bytes used by the dictionary.
+     */
+    public long byteSize() {
+        return terms.length + 4L * blockStart.length + 8L * offsets.length + 4L * dfs.length;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(size);
+        out.writeInt(termsLength);
+        out.write(terms, 0, termsLength);
+        int numBlocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        for (int i = 0; i < numBlocks; i++) {
+            out.writeInt(blockStart[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeLong(offsets[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeInt(dfs[i]);
+        }
+    }
+
+    /**
+     *  Reads a dictionary written by write() from the buffer.
+     */
+    public static TermDictionary read(ByteBuffer in) throws IOException {
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a dictionary file");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported dictionary file version " + version);
+        }
+        TermDictionary dictionary = new TermDictionary();
+        int size = in.getInt();
+        dictionary.size = size;
+        dictionary.termsLength = in.getInt();
+        dictionary.terms = new byte[dictionary.termsLength];
+        in.get(dictionary.terms);
+        int numBlocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        dictionary.blockStart = new int[numBlocks];
+        in.asIntBuffer().get(dictionary.blockStart);
+        in.position(in.position() + 4 * numBlocks);
+        dictionary.offsets = new long[size];
+        in.asLongBuffer().get(dictionary.offsets);
+        in.position(in.position() + 8 * size);
+        dictionary.dfs = new int[size];
+        in.asIntBuffer().get(dictionary.dfs);
+        in.position(in.position() + 4 * size);
+        return dictionary;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.util.Arrays;
+
+/**
+ *   Interns terms as dense int IDs, 0, 1, 2, ...
+ *
+ *   The characters of all terms are kept back to back in one char array
+ *   and looked up through an open addressing hash table, so interning a
+ *   token read into a char buffer allocates nothing unless a table has
+ *   to grow. The hash of a term is the same as String.hashCode().
+ */
+public class TermTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The characters of all terms. */
+    private char[] chars = new char[8 * INITIAL_CAPACITY];
+    private int charsLength = 0;
+
+    /** Term i owns chars[termStart[i]] to chars[termStart[i+1]]. */
+    private int[] termStart = new int[INITIAL_CAPACITY + 1];
+
+    /** The hash of each term. */
+    private int[] hashes = new int[INITIAL_CAPACITY];
+
+    /** Number of terms. */
+    private int size = 0;
+
+    /** The hash table, holding term ID + 1, or 0 for an empty slot. */
+    private int[] slots = new int[2 * INITIAL_CAPACITY];
+
+
+    /**
+     *  Returns the ID of the term in buf[from] to buf[from+length],
+     *  adding the term if it is new.
+     */
+    public int intern(char[] buf, int from, int length) {
+        int h = 0;
+        for (int i = from; i < from + length; i++) {
+            h = 31 * h + buf[i];
+        }
+        int mask = slots.length - 1;
+        int slot = spread(h) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == h && equals(id, buf, from, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = add(buf, from, length, h);
+        slots[slot] = id + 1;
+        if (2 * size > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     *  Returns the ID of the term, adding the term if it is new.
+     */
+    public int intern(String term) {
+        return intern(term.toCharArray(), 0, term.length());
+    }
+
+    /**
+     *  Returns the ID of the term, or -1 if it has not been interned.
+     */
+    public int lookup(String term) {
+        int h = term.hashCode();
+        int mask = slots.length - 1;
+        int slot = spread(h) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == h && equals(id, term)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     *  Returns the term with the given ID as a String.
+     */
+    public String term(int id) {
+        return new String(chars, termStart[id], termStart[id + 1] - termStart[id]);
+    }
+
+    /**  Returns the number of characters of the term with the given ID */
+    public int length(int id) {
+        return termStart[id + 1] - termStart[id];
+    }
+
+    /**
+     *  Copies the characters of the term with the given ID to dst[pos]
+     *  and on, and returns the position after the last one.
+     */
+    public int getChars(int id, char[] dst, int pos) {
+        int length = length(id);
+        System.arraycopy(chars, termStart[id], dst, pos, length);
+        return pos + length;
+    }
+
+    /**  Number of interned terms */
+    public int size() {
+        return size;
+    }
+
+    /**
+     *  Returns about the number of bytes of heap memory used by the
+     *  table, including the room allocated for more terms.
+     */
+    public long byteSize() {
+        return 2L * chars.length + 4L * termStart.length + 4L * hashes.length + 4L * slots.length;
+    }
+
+    /**
+     *  Removes all terms, keeping the allocated tables for reuse.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+        charsLength = 0;
+    }
+
+    private int add(char[] buf, int from, int length, int h) {
+        if (size + 1 == termStart.length) {
+            termStart = Arrays.copyOf(termStart, 2 * size + 1);
+            hashes = Arrays.copyOf(hashes, 2 * size);
+        }
+        if (charsLength + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(2 * chars.length, charsLength + length));
+        }
+        System.arraycopy(buf, from, chars, charsLength, length);
+        termStart[size] = charsLength;
+        charsLength += length;
+        termStart[size + 1] = charsLength;
+        hashes[size] = h;
+        return size++;
+    }
+
+    private void rehash() {
+        slots = new int[2 * slots.length];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = spread(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private boolean equals(int id, char[] buf, int from, int length) {
+        int start = termStart[id];
+        if (termStart[id + 1] - start != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[start + i] != buf[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equals(int id, String term) {
+        int start = termStart[id];
+        int length = term.length();
+        if (termStart[id + 1] - start != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[start + i] != term.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ *   Merges the runs written while indexing on disk in the background, so
+ *   that little is left to merge when indexing is done.
+ *
+ *   The runs are kept in the order of their docIDs, since only runs next
+ *   to each other can be merged by concatenating their lists. The runs
+ *   written by the indexer are about as large as the first one, which
+ *   puts them in tier 0, and every tier above holds runs about
+ *   MERGE_FACTOR times as large as the tier below. As soon as
+ *   MERGE_FACTOR runs next to each other are in the same tier and not
+ *   being merged, they are merged into one run of the tier above. At
+ *   most Constants.mergeThreads merges run at once, and with none the
+ *   runs are only kept in order for the final merge.
+ */
+public class TieredMerger {
+
+    /** The number of runs of a tier merged into one. */
+    private static final int MERGE_FACTOR = 10;
+
+    /** The runs, in docID order. */
+    private final ArrayList<Run> runs = new ArrayList<Run>();
+
+    /** The size of the first run, and so of the runs of tier 0. */
+    private long baseBytes = 0;
+
+    private ExecutorService merges = null;
+    private int running = 0;
+    private int lastMergeID = 0;
+
+    /** The first exception thrown by a merge, rethrown by finish(). */
+    private Throwable failure = null;
+
+
+    private static class Run {
+        final String fileName;
+        final int tier;
+        boolean merging = false;
+
+        Run(String fileName, int tier) {
+            this.fileName = fileName;
+            this.tier = tier;
+        }
+    }
+
+    /**
+     *  Adds the run, whose docIDs come after those of all runs added
+     *  before, and starts the merges it makes possible.
+     */
+    public synchronized void add(String fileName) {
+        runs.add(new Run(fileName, tier(fileName)));
+        startMerges();
+    }
+
+    /**
+     *  Waits for the merges running to finish and returns the file names
+     *  of the runs left to merge, in docID order. The merger is empty
+     *  afterwards. If a merge failed, its exception is thrown instead,
+     *  since the postings of the runs it was merging are lost.
+     */
+    public synchronized List<String> finish() throws IOException {
+        while (running > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (merges != null) {
+            merges.shutdown();
+            merges = null;
+        }
+        ArrayList<String> fileNames = new ArrayList<String>(runs.size());
+        for (Run run : runs) {
+            fileNames.add(run.fileName);
+        }
+        runs.clear();
+        baseBytes = 0;
+        if (failure != null) {
+            Throwable e = failure;
+            failure = null;
+            if (e instanceof IOException) {
+                throw (IOException)e;
+            } else if (e instanceof RuntimeException) {
+                throw (RuntimeException)e;
+            }
+            throw (Error)e;
+        }
+        return fileNames;
+    }
+
+    /**
+     *  Returns the tier of the run, the number of times MERGE_FACTOR it
+     *  is as large as the runs of tier 0, rounded.
+     */
+    private int tier(String fileName) {
+        long bytes = Math.max(1, new File(fileName).length());
+        if (baseBytes == 0) {
+            baseBytes = bytes;
+        }
+        return (int)Math.max(0, Math.round(Math.log((double)bytes / baseBytes) / Math.log(MERGE_FACTOR)));
+    }
+
+    /**
+     *  Starts a merge of every MERGE_FACTOR runs next to each other in
+     *  the same tier that are not being merged.
+     */
+    private void startMerges() {
+        if (Constants.mergeThreads <= 0 || failure != null) {
+            return;
+        }
+        int from = 0;
+        for (int i = 0; i < runs.size(); i++) {
+            Run run = runs.get(i);
+            if (run.merging || run.tier != runs.get(from).tier || runs.get(from).merging) {
+                from = i;
+            }
+            if (!run.merging && i - from + 1 == MERGE_FACTOR) {
+                start(new ArrayList<Run>(runs.subList(from, i + 1)));
+                from = i + 1;
+            }
+        }
+    }
+
+    private void start(final List<Run> group) {
+        if (merges == null) {
+            merges = Executors.newFixedThreadPool(Constants.mergeThreads);
+        }
+        final String[] fileNames = new String[group.size()];
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).merging = true;
+            fileNames[i] = group.get(i).fileName;
+        }
+        final String fileName = Constants.mergeFileName("g" + lastMergeID++);
+        running++;
+        merges.execute(new Runnable() {
+            public void run() {
+                Throwable thrown = null;
+                try {
+                    new IndexWriter().mergeRuns(fileNames, fileName, null, null, true);
+                } catch (Throwable e) {
+                    thrown = e;
+                } finally {
+                    merged(group, fileName, thrown);
+                }
+            }
+        });
+    }
+
+    /**
+     *  Puts the run merged from the group in the place of the group. If
+     *  the merge threw, its partly written file is deleted and the
+     *  exception kept for finish(); the runs of the group cannot be kept
+     *  either, as the merge deletes them while reading.
+     */
+    private synchronized void merged(List<Run> group, String fileName, Throwable thrown) {
+        int i = runs.indexOf(group.get(0));
+        runs.subList(i, i + group.size()).clear();
+        if (thrown == null) {
+            runs.add(i, new Run(fileName, tier(fileName)));
+        } else {
+            new File(fileName).delete();
+            if (failure == null) {
+                failure = thrown;
+            }
+        }
+        running--;
+        startMerges();
+        notifyAll();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   First version:  Simon Karlsson, 2016
+ */
+
+package ir;
+
+import java.nio.ByteBuffer;
+
+/**
+ *   Variable byte encoding of non-negative integers. Seven bits are
+ *   stored per byte, least significant group first, and the high bit
+ *   of a byte is set when more bytes of the same number follow.
+ */
+public class VariableByteCode {
+
+    /** The maximum number of bytes used by one int. */
+    public static final int MAX_BYTES = 5;
+
+    /**
+     *  Writes the value to the buffer at the given position and returns
+     *  the position after the last byte written.
+     */
+    public static int encode(int value, byte[] buf, int pos) {
+        while ((value & ~0x7F) != 0) {
+            buf[pos++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte)value;
+        return pos;
+    }
+
+    /**
+     *  Returns the number of bytes needed to encode the value.
+     */
+    public static int encodedLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     *  Reads one number from the current position of the buffer.
+     */
+    public static int decode(ByteBuffer buf) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     *  Reads one number starting at the given position of the buffer.
+     *  The number occupies encodedLength(value) bytes.
+     */
+    public static int decode(byte[] buf, int pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf[pos++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}